@@ -39,6 +39,11 @@ android {
         // Disable unused AGP features
         viewBinding = true
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+        }
+    }
 
 }
 dependencies {
@@ -54,7 +59,11 @@ dependencies {
     implementation(libs.androidx.compose.material)
 
     implementation(libs.androidx.lifecycle.runtime)
+    testImplementation(composeBom)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.androidx.compose.ui.test.junit4)
+    testImplementation(libs.androidx.compose.ui.test.manifest)
     androidTestImplementation(libs.junit)
     androidTestImplementation(libs.androidx.test.core)
     androidTestImplementation(libs.androidx.test.runner)
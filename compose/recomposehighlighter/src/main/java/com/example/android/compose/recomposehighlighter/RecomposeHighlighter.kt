@@ -115,45 +115,53 @@ private class RecomposeHighlighterModifier : Modifier.Node(), DrawModifierNode {
         // Draw actual content.
         drawContent()
 
-        // Below is to draw the highlight, if necessary. A lot of the logic is copied from Modifier.border
+        drawRecomposeHighlight(totalCompositions)
+    }
+}
 
-        val hasValidBorderParams = size.minDimension > 0f
-        if (!hasValidBorderParams || totalCompositions <= 0) {
-            return
-        }
+/**
+ * Draws the highlight for an element that recomposed [totalCompositions] times before the
+ * timeout, if necessary.
+ */
+internal fun ContentDrawScope.drawRecomposeHighlight(totalCompositions: Long) {
+    // Below is to draw the highlight, if necessary. A lot of the logic is copied from Modifier.border
 
-        val (color, strokeWidthPx) =
-            when (totalCompositions) {
-                // We need at least one composition to draw, so draw the smallest border
-                // color in blue.
-                1L -> Color.Blue to 1f
-                // 2 compositions is _probably_ okay.
-                2L -> Color.Green to 2.dp.toPx()
-                // 3 or more compositions before timeout may indicate an issue. lerp the
-                // color from yellow to red, and continually increase the border size.
-                else -> {
-                    lerp(
-                        Color.Yellow.copy(alpha = 0.8f),
-                        Color.Red.copy(alpha = 0.5f),
-                        min(1f, (totalCompositions - 1).toFloat() / 100f),
-                    ) to totalCompositions.toInt().dp.toPx()
-                }
+    val hasValidBorderParams = size.minDimension > 0f
+    if (!hasValidBorderParams || totalCompositions <= 0) {
+        return
+    }
+
+    val (color, strokeWidthPx) =
+        when (totalCompositions) {
+            // We need at least one composition to draw, so draw the smallest border
+            // color in blue.
+            1L -> Color.Blue to 1f
+            // 2 compositions is _probably_ okay.
+            2L -> Color.Green to 2.dp.toPx()
+            // 3 or more compositions before timeout may indicate an issue. lerp the
+            // color from yellow to red, and continually increase the border size.
+            else -> {
+                lerp(
+                    Color.Yellow.copy(alpha = 0.8f),
+                    Color.Red.copy(alpha = 0.5f),
+                    min(1f, (totalCompositions - 1).toFloat() / 100f),
+                ) to totalCompositions.toInt().dp.toPx()
             }
+        }
 
-        val halfStroke = strokeWidthPx / 2
-        val topLeft = Offset(halfStroke, halfStroke)
-        val borderSize = Size(size.width - strokeWidthPx, size.height - strokeWidthPx)
-
-        val fillArea = (strokeWidthPx * 2) > size.minDimension
-        val rectTopLeft = if (fillArea) Offset.Zero else topLeft
-        val size = if (fillArea) size else borderSize
-        val style = if (fillArea) Fill else Stroke(strokeWidthPx)
-
-        drawRect(
-            brush = SolidColor(color),
-            topLeft = rectTopLeft,
-            size = size,
-            style = style,
-        )
-    }
+    val halfStroke = strokeWidthPx / 2
+    val topLeft = Offset(halfStroke, halfStroke)
+    val borderSize = Size(size.width - strokeWidthPx, size.height - strokeWidthPx)
+
+    val fillArea = (strokeWidthPx * 2) > size.minDimension
+    val rectTopLeft = if (fillArea) Offset.Zero else topLeft
+    val size = if (fillArea) size else borderSize
+    val style = if (fillArea) Fill else Stroke(strokeWidthPx)
+
+    drawRect(
+        brush = SolidColor(color),
+        topLeft = rectTopLeft,
+        size = size,
+        style = style,
+    )
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.compose.recomposehighlighter
+
+import androidx.compose.runtime.Stable
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.node.ModifierNodeElement
+import androidx.compose.ui.platform.InspectorInfo
+import androidx.compose.ui.platform.debugInspectorInfo
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A [Modifier] that records how often the element recomposes in [RecompositionMetrics] under
+ * [tag], without drawing anything. Elements sharing a tag are counted together.
+ */
+@Stable
+fun Modifier.recomposeMetrics(tag: String): Modifier = this.then(RecomposeMetricsElement(tag))
+
+private class RecomposeMetricsElement(
+    private val tag: String
+) : ModifierNodeElement<RecomposeMetricsModifier>() {
+
+    override fun InspectorInfo.inspectableProperties() {
+        debugInspectorInfo {
+            name = "recomposeMetrics"
+            properties["tag"] = tag
+        }
+    }
+
+    override fun create(): RecomposeMetricsModifier =
+        RecomposeMetricsModifier(RecompositionMetrics.counter(tag))
+
+    override fun update(node: RecomposeMetricsModifier) {
+        if (node.counter.tag != tag) {
+            node.counter = RecompositionMetrics.counter(tag)
+        }
+        node.counter.increment()
+    }
+
+    // It's never equal, so that every recomposition triggers the update function.
+    override fun equals(other: Any?): Boolean = false
+
+    override fun hashCode(): Int = tag.hashCode()
+}
+
+private class RecomposeMetricsModifier(var counter: RecompositionMetrics.Counter) : Modifier.Node()
+
+/**
+ * Process-wide registry of recomposition counts, keyed by tag.
+ *
+ * Recording a recomposition is a single atomic increment on a counter that the modifier node
+ * holds on to, so the hot path never touches the map. Rates are computed by [tick], which a
+ * single shared ticker started with [startTicker] calls for every counter, instead of each node
+ * running its own timer.
+ */
+object RecompositionMetrics {
+
+    class Counter internal constructor(val tag: String) {
+        private val total = AtomicLong()
+
+        @Volatile
+        private var lastTotal = 0L
+
+        /** Recompositions per second over the last tick interval. */
+        @Volatile
+        var rate: Double = 0.0
+            private set
+
+        /** Highest [rate] observed since the last [reset]. */
+        @Volatile
+        var peakRate: Double = 0.0
+            private set
+
+        val count: Long get() = total.get()
+
+        fun increment() {
+            total.incrementAndGet()
+        }
+
+        internal fun tick(elapsedSeconds: Double) {
+            val current = total.get()
+            rate = (current - lastTotal) / elapsedSeconds
+            if (rate > peakRate) peakRate = rate
+            lastTotal = current
+        }
+
+        internal fun reset() {
+            total.set(0)
+            lastTotal = 0
+            rate = 0.0
+            peakRate = 0.0
+        }
+    }
+
+    private val counters = ConcurrentHashMap<String, Counter>()
+    private var lastTickNanos = System.nanoTime()
+    private var ticker: ScheduledExecutorService? = null
+
+    fun counter(tag: String): Counter = counters.getOrPut(tag) { Counter(tag) }
+
+    fun count(tag: String): Long = counters[tag]?.count ?: 0L
+
+    /**
+     * Updates the rate of every counter based on the recompositions since the previous tick.
+     */
+    @Synchronized
+    fun tick(nowNanos: Long = System.nanoTime()) {
+        val elapsedSeconds = (nowNanos - lastTickNanos) / 1e9
+        if (elapsedSeconds <= 0.0) return
+        lastTickNanos = nowNanos
+        counters.values.forEach { it.tick(elapsedSeconds) }
+    }
+
+    @Synchronized
+    fun startTicker(periodMillis: Long = 1000L) {
+        if (ticker != null) return
+        lastTickNanos = System.nanoTime()
+        ticker = Executors.newSingleThreadScheduledExecutor { runnable ->
+            Thread(runnable, "RecompositionMetrics").apply { isDaemon = true }
+        }.apply {
+            scheduleAtFixedRate({ tick() }, periodMillis, periodMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    @Synchronized
+    fun stopTicker() {
+        ticker?.shutdownNow()
+        ticker = null
+    }
+
+    /**
+     * Zeroes every counter. Counters are kept rather than removed, since attached nodes still
+     * hold on to them.
+     */
+    @Synchronized
+    fun reset() {
+        counters.values.forEach { it.reset() }
+        lastTickNanos = System.nanoTime()
+    }
+
+    /**
+     * Returns the [limit] counters with the most recompositions.
+     */
+    fun top(limit: Int): List<Counter> =
+        counters.values.sortedByDescending { it.count }.take(limit)
+
+    /**
+     * Dumps the [limit] most recomposed tags as a JSON array.
+     */
+    fun dumpJson(limit: Int = 20): String = top(limit).joinToString(
+        separator = ",\n",
+        prefix = "[\n",
+        postfix = "\n]",
+    ) { counter ->
+        "  {\"tag\": \"${jsonEscape(counter.tag)}\", \"count\": ${counter.count}, " +
+            "\"ratePerSecond\": ${"%.2f".format(Locale.ROOT, counter.rate)}, " +
+            "\"peakRatePerSecond\": ${"%.2f".format(Locale.ROOT, counter.peakRate)}}"
+    }
+
+    private fun jsonEscape(value: String): String = buildString {
+        for (c in value) {
+            when (c) {
+                '"' -> append("\\\"")
+                '\\' -> append("\\\\")
+                '\n' -> append("\\n")
+                '\r' -> append("\\r")
+                '\t' -> append("\\t")
+                in '\u0000'..'\u001f' -> append("\\u%04x".format(Locale.ROOT, c.code))
+                else -> append(c)
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.compose.recomposehighlighter
+
+import androidx.compose.foundation.layout.Box
+import androidx.compose.foundation.layout.Column
+import androidx.compose.foundation.layout.size
+import androidx.compose.runtime.mutableIntStateOf
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.test.junit4.createComposeRule
+import androidx.compose.ui.unit.dp
+import java.lang.management.ManagementFactory
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+/**
+ * Recomposes a column of boxes with [recomposeHighlighter], which cancels and relaunches a
+ * timer coroutine on every recomposition, and with [decayingRecomposeHighlighter], and reports
+ * the bytes allocated and the time per highlighted recomposition, on top of the same column
+ * without a highlighter.
+ */
+@RunWith(RobolectricTestRunner::class)
+class RecomposeHighlighterBenchmark {
+
+    @get:Rule
+    val composeTestRule = createComposeRule()
+
+    private val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    private class Result(val bytes: Long, val nanos: Long)
+
+    private val round = mutableIntStateOf(0)
+    private val highlighter = mutableStateOf<Modifier.() -> Modifier>({ this })
+
+    private fun recompose(rounds: Int) {
+        repeat(rounds) {
+            round.intValue++
+            composeTestRule.mainClock.advanceTimeByFrame()
+        }
+    }
+
+    private fun measure(modifier: Modifier.() -> Modifier): Result {
+        highlighter.value = modifier
+        // Warm up, and let the nodes of the new modifier be created.
+        recompose(ROUNDS)
+        val threadId = Thread.currentThread().id
+        val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+        val startNanos = System.nanoTime()
+        recompose(ROUNDS)
+        val elapsedNanos = System.nanoTime() - startNanos
+        return Result(threadMXBean.getThreadAllocatedBytes(threadId) - startBytes, elapsedNanos)
+    }
+
+    @Test
+    fun compareModifierNodes() {
+        composeTestRule.mainClock.autoAdvance = false
+        composeTestRule.setContent {
+            // Reading the round recomposes the column, which updates the modifier of every box.
+            round.intValue
+            val highlight = highlighter.value
+            Column {
+                repeat(NODES) { Box(Modifier.size(1.dp).highlight()) }
+            }
+        }
+
+        val baseline = measure { this }
+        val timer = measure { recomposeHighlighter() }
+        val decaying = measure { decayingRecomposeHighlighter() }
+
+        val updates = (NODES * ROUNDS).toDouble()
+        fun bytesPerUpdate(result: Result) = (result.bytes - baseline.bytes) / updates
+        fun nanosPerUpdate(result: Result) = (result.nanos - baseline.nanos) / updates
+        println(
+            "timer coroutine: %.1f bytes, %.1f ns per recomposition; decaying count: %.1f bytes, %.1f ns per recomposition"
+                .format(bytesPerUpdate(timer), nanosPerUpdate(timer), bytesPerUpdate(decaying), nanosPerUpdate(decaying))
+        )
+        assertTrue(bytesPerUpdate(decaying) < bytesPerUpdate(timer))
+    }
+
+    @Test
+    fun decayingCountResetsAfterTimeout() {
+        val count = DecayingCount(timeoutNanos = 100)
+        count.record(1_000)
+        count.record(1_050)
+        assertEquals(2, count.current(1_100))
+        assertEquals(0, count.current(1_150))
+
+        count.record(1_200)
+        assertEquals(1, count.current(1_200))
+    }
+
+    private companion object {
+        const val NODES = 200
+        const val ROUNDS = 100
+    }
+}
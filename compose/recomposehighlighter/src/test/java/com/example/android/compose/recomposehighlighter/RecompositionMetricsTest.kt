@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.compose.recomposehighlighter
+
+import androidx.compose.foundation.layout.Box
+import androidx.compose.foundation.layout.size
+import androidx.compose.runtime.mutableIntStateOf
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.test.junit4.createComposeRule
+import androidx.compose.ui.unit.dp
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class RecompositionMetricsTest {
+
+    @get:Rule
+    val composeTestRule = createComposeRule()
+
+    @Before
+    fun setUp() {
+        RecompositionMetrics.reset()
+    }
+
+    @Test
+    fun countsAreKeptPerTag() {
+        val header = RecompositionMetrics.counter("header")
+        val list = RecompositionMetrics.counter("list")
+        repeat(3) { header.increment() }
+        repeat(10) { list.increment() }
+
+        assertEquals(3, RecompositionMetrics.count("header"))
+        assertEquals(10, RecompositionMetrics.count("list"))
+        assertEquals(listOf("list", "header"), RecompositionMetrics.top(2).map { it.tag })
+    }
+
+    @Test
+    fun modifierCountsRecompositions() {
+        val round = mutableIntStateOf(0)
+        composeTestRule.setContent {
+            // Reading the round recomposes the box, which updates its modifier.
+            round.intValue
+            Box(Modifier.recomposeMetrics("box").size(10.dp))
+        }
+        composeTestRule.waitForIdle()
+        assertEquals(0, RecompositionMetrics.count("box"))
+
+        repeat(RECOMPOSITIONS) {
+            round.intValue++
+            composeTestRule.waitForIdle()
+        }
+        assertEquals(RECOMPOSITIONS.toLong(), RecompositionMetrics.count("box"))
+    }
+
+    @Test
+    fun tickComputesRates() {
+        val counter = RecompositionMetrics.counter("ticker")
+        val start = System.nanoTime() + 1_000_000_000L
+        RecompositionMetrics.tick(start)
+        repeat(30) { counter.increment() }
+        RecompositionMetrics.tick(start + 500_000_000L)
+
+        assertEquals(60.0, counter.rate, 0.001)
+        assertEquals(60.0, counter.peakRate, 0.001)
+
+        RecompositionMetrics.tick(start + 1_500_000_000L)
+        assertEquals(0.0, counter.rate, 0.001)
+        assertEquals(60.0, counter.peakRate, 0.001)
+    }
+
+    @Test
+    fun dumpJsonListsHottestFirst() {
+        repeat(5) { RecompositionMetrics.counter("hot").increment() }
+        RecompositionMetrics.counter("cold").increment()
+
+        val json = RecompositionMetrics.dumpJson(limit = 1)
+        assertTrue(json.contains("\"tag\": \"hot\", \"count\": 5"))
+        assertTrue(!json.contains("cold"))
+    }
+
+    @Test
+    fun dumpJsonEscapesTags() {
+        RecompositionMetrics.counter("a \"quoted\"\\tag\n\twith\u0001controls").increment()
+
+        val json = RecompositionMetrics.dumpJson()
+        assertTrue(json.contains("\"tag\": \"a \\\"quoted\\\"\\\\tag\\n\\twith\\u0001controls\""))
+    }
+
+    private companion object {
+        const val RECOMPOSITIONS = 10
+    }
+}
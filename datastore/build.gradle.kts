@@ -94,8 +94,10 @@ dependencies {
     // [START android_datastore_json_dependency]
     implementation(libs.kotlinx.serialization.json)
     // [END android_datastore_json_dependency]
+    implementation(libs.kotlinx.serialization.protobuf)
 
     testImplementation(libs.junit)
+    testImplementation(libs.kotlinx.coroutines.test)
     androidTestImplementation(libs.androidx.test.ext.junit)
     androidTestImplementation(libs.androidx.test.espresso.core)
     androidTestImplementation(platform(libs.androidx.compose.bom))
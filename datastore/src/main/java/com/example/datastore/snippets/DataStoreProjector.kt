@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets
+
+import androidx.datastore.core.DataStore
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.shareIn
+
+/**
+ * Exposes single fields of a DataStore as flows that only emit when that field changes.
+ *
+ * Mapping `dataStore.data` directly in every collector starts one upstream collection per
+ * collector and re-emits to all of them on every write, even if the field they read didn't
+ * change. A projector shares one upstream collection, started while any projection is
+ * collected, and filters out unchanged values per projection.
+ */
+class DataStoreProjector<T>(
+    data: Flow<T>,
+    scope: CoroutineScope,
+    started: SharingStarted = SharingStarted.WhileSubscribed(stopTimeoutMillis = 5_000),
+) {
+    private val shared: SharedFlow<T> = data.shareIn(scope, started, replay = 1)
+
+    /**
+     * Returns a flow of the value of [selector], which emits the current value and then each
+     * time it changes. [selector] should be cheap, as it runs on every write.
+     */
+    fun <R> select(selector: (T) -> R): Flow<R> = shared.map(selector).distinctUntilChanged()
+}
+
+fun <T> DataStore<T>.projector(
+    scope: CoroutineScope,
+    started: SharingStarted = SharingStarted.WhileSubscribed(stopTimeoutMillis = 5_000),
+): DataStoreProjector<T> = DataStoreProjector(data, scope, started)
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets.json
+
+import androidx.datastore.core.CorruptionException
+import androidx.datastore.core.Serializer
+import java.io.InputStream
+import java.io.OutputStream
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationException
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.decodeFromStream
+import kotlinx.serialization.json.encodeToStream
+import kotlinx.serialization.protobuf.ProtoBuf
+import kotlinx.serialization.serializer
+
+enum class SerializationMode {
+    /**
+     * Reads the whole file into a String before decoding it, like [SettingsSerializer]. Kept
+     * for comparison.
+     */
+    JSON_STRING,
+
+    /**
+     * Decodes JSON directly from the file stream and encodes it directly to the file stream,
+     * without an intermediate byte array or String. The file format is unchanged.
+     */
+    JSON_STREAM,
+
+    /**
+     * Compact binary ProtoBuf. Smaller files and faster to parse than JSON, but not compatible
+     * with files written in a JSON mode.
+     */
+    PROTOBUF,
+}
+
+/**
+ * A DataStore [Serializer] for any `@Serializable` class, in the given [mode].
+ */
+@OptIn(ExperimentalSerializationApi::class)
+class KotlinxSerializer<T>(
+    private val serializer: KSerializer<T>,
+    override val defaultValue: T,
+    private val mode: SerializationMode = SerializationMode.JSON_STREAM,
+    private val json: Json = Json,
+    private val protoBuf: ProtoBuf = ProtoBuf,
+) : Serializer<T> {
+
+    override suspend fun readFrom(input: InputStream): T =
+        try {
+            when (mode) {
+                SerializationMode.JSON_STRING ->
+                    json.decodeFromString(serializer, input.readBytes().decodeToString())
+                SerializationMode.JSON_STREAM -> json.decodeFromStream(serializer, input)
+                SerializationMode.PROTOBUF -> protoBuf.decodeFromByteArray(serializer, input.readBytes())
+            }
+        } catch (serialization: SerializationException) {
+            throw CorruptionException("Unable to read ${serializer.descriptor.serialName}", serialization)
+        }
+
+    override suspend fun writeTo(t: T, output: OutputStream) {
+        when (mode) {
+            SerializationMode.JSON_STRING ->
+                output.write(json.encodeToString(serializer, t).encodeToByteArray())
+            SerializationMode.JSON_STREAM -> json.encodeToStream(serializer, t, output)
+            SerializationMode.PROTOBUF -> output.write(protoBuf.encodeToByteArray(serializer, t))
+        }
+    }
+}
+
+inline fun <reified T> kotlinxSerializer(
+    defaultValue: T,
+    mode: SerializationMode = SerializationMode.JSON_STREAM,
+): KotlinxSerializer<T> = KotlinxSerializer(serializer<T>(), defaultValue, mode)
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets.multiprocess
+
+import androidx.datastore.core.DataStore
+import java.io.IOException
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Buffers rapid updates to a [DataStore] in memory and writes them in a single `updateData`
+ * call at most every [flushIntervalMillis], or when [flush] is called.
+ *
+ * With a multi-process DataStore every `updateData` takes the file lock, serializes the whole
+ * value and syncs the file to disk, so coalescing a burst of updates into one write saves most
+ * of that work. Pending updates are kept as transforms and applied to the latest value on disk
+ * when flushed, so updates made by other processes in the meantime are not lost.
+ *
+ * Reads through [data] include the pending updates of this writer, so the writing process
+ * always reads its own writes. Other processes see the updates once they are flushed, at most
+ * [flushIntervalMillis] later. Call [flush] before telling another process to read the value.
+ */
+class CoalescingDataStoreWriter<T>(
+    private val dataStore: DataStore<T>,
+    private val scope: CoroutineScope,
+    private val flushIntervalMillis: Long = DEFAULT_FLUSH_INTERVAL_MILLIS,
+) {
+    // A completed write, and the value it wrote.
+    private class Written<T>(val sequence: Long, val value: T)
+
+    private val lock = Any()
+    private val flushMutex = Mutex()
+    private var pending = ArrayList<(T) -> T>()
+
+    // The batch being written, still applied by data until the write has completed.
+    private var inFlight: List<(T) -> T> = emptyList()
+
+    // The last completed write. data reads from it until the store has emitted its value.
+    private var written: Written<T>? = null
+    private var scheduledFlush: Job? = null
+
+    // Bumped on every change to pending, so that data re-applies the pending transforms.
+    private val pendingVersion = MutableStateFlow(0L)
+
+    /** The number of `updateData` calls made so far. */
+    @Volatile
+    var writes = 0L
+        private set
+
+    val data: Flow<T> = flow {
+        // The store may emit the written value to this collector after the write has completed,
+        // so the written value stands in for the stored one until then. A store that emits any
+        // other value has moved past the write, for example after a write by another process.
+        var confirmed = synchronized(lock) { written?.sequence ?: 0L }
+        var seen = confirmed
+        var storedWhenSeen: T? = null
+        emitAll(
+            combine(dataStore.data, pendingVersion) { stored, _ ->
+                val (last, transforms) = synchronized(lock) { written to inFlight + pending }
+                if (last != null && last.sequence > confirmed) {
+                    if (last.sequence != seen) {
+                        seen = last.sequence
+                        storedWhenSeen = stored
+                    }
+                    if (stored == last.value || stored != storedWhenSeen) confirmed = last.sequence
+                }
+                val base = if (last == null || last.sequence <= confirmed) stored else last.value
+                transforms.fold(base) { value, transform -> transform(value) }
+            }
+        )
+    }
+
+    fun update(transform: (T) -> T) {
+        synchronized(lock) {
+            pending.add(transform)
+            scheduleFlushLocked()
+        }
+        pendingVersion.value++
+    }
+
+    private fun scheduleFlushLocked() {
+        if (scheduledFlush != null) return
+        // Started once assigned, so that the job can tell whether it is still the scheduled one.
+        val job = scope.launch(start = CoroutineStart.LAZY) {
+            delay(flushIntervalMillis)
+            synchronized(lock) {
+                // An explicit flush replaced this one.
+                if (scheduledFlush !== coroutineContext[Job]) return@launch
+                scheduledFlush = null
+            }
+            try {
+                write()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                // write() has already rescheduled the updates if the write can be retried.
+            }
+        }
+        scheduledFlush = job
+        job.start()
+    }
+
+    /**
+     * Writes all pending updates in a single `updateData` call, and returns once they are on
+     * disk. The scheduled flush is cancelled, and the next update schedules a new one. If the write fails with an [IOException], the updates stay pending and are retried
+     * after another [flushIntervalMillis]. If a transform throws, the batch is dropped, since
+     * retrying it would fail again.
+     */
+    suspend fun flush() {
+        synchronized(lock) {
+            scheduledFlush?.cancel()
+            scheduledFlush = null
+        }
+        write()
+    }
+
+    private suspend fun write() {
+        flushMutex.withLock {
+            val batch = synchronized(lock) {
+                inFlight = pending
+                pending.also { pending = ArrayList() }
+            }
+            if (batch.isEmpty()) return
+            try {
+                val value = dataStore.updateData { stored -> batch.fold(stored) { value, transform -> transform(value) } }
+                writes++
+                synchronized(lock) { written = Written(writes, value) }
+            } catch (e: IOException) {
+                synchronized(lock) {
+                    batch.addAll(pending)
+                    pending = batch
+                    scheduleFlushLocked()
+                }
+                throw e
+            } finally {
+                synchronized(lock) { inFlight = emptyList() }
+                pendingVersion.value++
+            }
+        }
+    }
+
+    companion object {
+        const val DEFAULT_FLUSH_INTERVAL_MILLIS = 1_000L
+    }
+}
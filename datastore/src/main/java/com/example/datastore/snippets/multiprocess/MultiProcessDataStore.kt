@@ -24,6 +24,7 @@ import androidx.datastore.core.Serializer
 import java.io.File
 import java.io.InputStream
 import java.io.OutputStream
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.map
 import kotlinx.serialization.Serializable
@@ -61,6 +62,16 @@ class MultiProcessDataStore(context: Context) {
     }
     // [END android_datastore_multiprocess_write]
 
+    /**
+     * Returns a writer that coalesces frequent updates, such as a timestamp updated every
+     * second, into one cross-process write per [flushIntervalMillis].
+     */
+    fun coalescingWriter(
+        scope: CoroutineScope,
+        flushIntervalMillis: Long = CoalescingDataStoreWriter.DEFAULT_FLUSH_INTERVAL_MILLIS,
+    ) =
+        CoalescingDataStoreWriter(dataStore, scope, flushIntervalMillis)
+
     companion object {
         var dataStore: DataStore<Time>? = null
     }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets.preferences
+
+import android.content.Context
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.MutablePreferences
+import androidx.datastore.preferences.core.PreferenceDataStoreFactory
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.mutablePreferencesOf
+import androidx.datastore.preferences.preferencesDataStoreFile
+import java.io.File
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
+
+/**
+ * A preferences store split across several DataStore files, for apps with thousands of keys.
+ *
+ * Each key belongs to one shard, chosen by the hash of its name, so a write only rewrites the
+ * file of that shard, and writes to different shards don't wait for each other. An edit can
+ * change any number of keys, as long as they belong to the same shard. Changing the number of
+ * shards moves keys to other shards, so it needs a migration.
+ *
+ * Like a single DataStore, there must only be one instance for the same files in a process.
+ */
+class ShardedPreferencesDataStore(private val shards: List<DataStore<Preferences>>) {
+
+    init {
+        require(shards.isNotEmpty()) { "At least one shard is needed" }
+    }
+
+    fun shardOf(key: Preferences.Key<*>): Int = Math.floorMod(key.name.hashCode(), shards.size)
+
+    /**
+     * All keys of all shards. Emits whenever any shard changes, so prefer [get] to observe a
+     * single key.
+     */
+    val data: Flow<Preferences> = combine(shards.map { it.data }) { shardPreferences ->
+        mutablePreferencesOf().apply {
+            shardPreferences.forEach { plusAssign(it) }
+        }.toPreferences()
+    }
+
+    /**
+     * The value of [key], read only from its shard.
+     */
+    operator fun <T> get(key: Preferences.Key<T>): Flow<T?> =
+        shards[shardOf(key)].data.map { it[key] }.distinctUntilChanged()
+
+    /**
+     * Atomically updates the shard that owns [key]. [transform] receives the preferences of
+     * that shard only, and throws [IllegalArgumentException] if it sets keys of other shards.
+     */
+    suspend fun updateData(
+        key: Preferences.Key<*>,
+        transform: suspend (Preferences) -> Preferences,
+    ): Preferences {
+        val shard = shardOf(key)
+        return shards[shard].updateData { preferences ->
+            transform(preferences).also { updated ->
+                val foreignKeys = updated.asMap().keys.filter { shardOf(it) != shard }
+                require(foreignKeys.isEmpty()) { "Keys $foreignKeys don't belong to shard $shard" }
+            }
+        }
+    }
+
+    /**
+     * Like [androidx.datastore.preferences.core.edit], on the shard that owns [key].
+     */
+    suspend fun edit(
+        key: Preferences.Key<*>,
+        transform: suspend (MutablePreferences) -> Unit,
+    ): Preferences = updateData(key) { preferences ->
+        preferences.toMutablePreferences().apply { transform(this) }
+    }
+
+    /**
+     * Sets [key] to the result of [transform], or removes it if the result is null.
+     */
+    suspend fun <T> update(key: Preferences.Key<T>, transform: (T?) -> T?): Preferences =
+        edit(key) { preferences ->
+            val value = transform(preferences[key])
+            if (value == null) preferences.remove(key) else preferences[key] = value
+        }
+
+    companion object {
+        fun create(
+            shardCount: Int,
+            scope: CoroutineScope = CoroutineScope(Dispatchers.IO + SupervisorJob()),
+            produceFile: (shard: Int) -> File,
+        ): ShardedPreferencesDataStore = ShardedPreferencesDataStore(
+            List(shardCount) { shard ->
+                PreferenceDataStoreFactory.create(scope = scope) { produceFile(shard) }
+            }
+        )
+
+        fun create(context: Context, name: String, shardCount: Int = 8): ShardedPreferencesDataStore =
+            create(shardCount) { shard ->
+                context.applicationContext.preferencesDataStoreFile("${name}_$shard")
+            }
+    }
+}
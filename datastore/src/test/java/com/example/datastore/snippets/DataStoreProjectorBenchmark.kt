@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets
+
+import androidx.datastore.core.DataStore
+import java.lang.management.ManagementFactory
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onStart
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * 32 collectors each read one field of a settings object while 320 writes each change one
+ * field. Counts the emissions, upstream collections and allocated bytes when every collector
+ * maps `data` itself, and when they select through a [DataStoreProjector].
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+class DataStoreProjectorBenchmark {
+
+    data class Settings(val fields: List<Int>)
+
+    private class FakeDataStore : DataStore<Settings> {
+        private val state = MutableStateFlow(Settings(List(FIELDS) { 0 }))
+        var collections = 0
+
+        override val data: Flow<Settings> = state.onStart { collections++ }
+
+        override suspend fun updateData(transform: suspend (t: Settings) -> Settings): Settings =
+            transform(state.value).also { state.value = it }
+    }
+
+    private val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    private class Result(val emissions: Int, val collections: Int, val allocatedBytes: Long)
+
+    private fun run(select: (FakeDataStore, CoroutineScope, Int) -> Flow<Int>): Result {
+        var emissions = 0
+        lateinit var dataStore: FakeDataStore
+        var allocated = 0L
+        runTest(UnconfinedTestDispatcher()) {
+            dataStore = FakeDataStore()
+            repeat(FIELDS) { field ->
+                backgroundScope.launch { select(dataStore, backgroundScope, field).collect { emissions++ } }
+            }
+            val threadId = Thread.currentThread().id
+            val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+            repeat(WRITES) { write ->
+                dataStore.updateData { settings ->
+                    val field = write % FIELDS
+                    settings.copy(fields = settings.fields.toMutableList().also { it[field]++ })
+                }
+            }
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes
+        }
+        return Result(emissions, dataStore.collections, allocated)
+    }
+
+    @Test
+    fun projectionsOnlyEmitChangedFields() {
+        val mapped = run { dataStore, _, field -> dataStore.data.map { it.fields[field] } }
+        var projector: DataStoreProjector<Settings>? = null
+        val projected = run { dataStore, scope, field ->
+            val shared = projector ?: dataStore.projector(scope).also { projector = it }
+            shared.select { it.fields[field] }
+        }
+        println(
+            "map: ${mapped.emissions} emissions, ${mapped.collections} collections, ${mapped.allocatedBytes} bytes; " +
+                "select: ${projected.emissions} emissions, ${projected.collections} collections, " +
+                "${projected.allocatedBytes} bytes"
+        )
+        // One initial emission per collector, then one per write for every collector or only
+        // for the collector of the changed field.
+        assertEquals(FIELDS + FIELDS * WRITES, mapped.emissions)
+        assertEquals(FIELDS + WRITES, projected.emissions)
+        assertEquals(FIELDS, mapped.collections)
+        assertEquals(1, projected.collections)
+    }
+
+    private companion object {
+        const val FIELDS = 32
+        const val WRITES = 320
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets.json
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.lang.management.ManagementFactory
+import kotlinx.coroutines.runBlocking
+import kotlinx.serialization.Serializable
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Compares read and write latency and allocated bytes of each [SerializationMode] for settings
+ * objects of about 1 KB, 64 KB and 1 MB of JSON.
+ */
+class KotlinxSerializerBenchmark {
+
+    @Serializable
+    data class Entry(val key: String, val value: String, val count: Long, val enabled: Boolean)
+
+    @Serializable
+    data class LargeSettings(val entries: List<Entry>)
+
+    private val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+
+    private class Result(val bytesPerOp: Double, val nanosPerOp: Double)
+
+    private inline fun measure(iterations: Int, block: () -> Unit): Result {
+        // Warm up.
+        repeat(iterations) { block() }
+        val threadId = Thread.currentThread().id
+        val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+        val startNanos = System.nanoTime()
+        repeat(iterations) { block() }
+        val elapsedNanos = System.nanoTime() - startNanos
+        val allocated = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes
+        return Result(allocated.toDouble() / iterations, elapsedNanos.toDouble() / iterations)
+    }
+
+    // Each entry is about 80 bytes of JSON.
+    private fun settingsOfSize(jsonBytes: Int) = LargeSettings(
+        List(jsonBytes / 80) { i -> Entry("setting_key_$i", "value_${i * 31}_abcdefgh", i * 1_000L, i % 2 == 0) }
+    )
+
+    private fun serializer(mode: SerializationMode) =
+        KotlinxSerializer(LargeSettings.serializer(), LargeSettings(emptyList()), mode)
+
+    private fun encode(mode: SerializationMode, settings: LargeSettings): ByteArray = runBlocking {
+        ByteArrayOutputStream().also { serializer(mode).writeTo(settings, it) }.toByteArray()
+    }
+
+    @Test
+    fun everyModeRoundTrips() = runBlocking {
+        val settings = settingsOfSize(4 * 1024)
+        for (mode in SerializationMode.values()) {
+            val bytes = encode(mode, settings)
+            assertEquals(settings, serializer(mode).readFrom(ByteArrayInputStream(bytes)))
+        }
+        // Streaming doesn't change the file format.
+        assertEquals(
+            encode(SerializationMode.JSON_STRING, settings).decodeToString(),
+            encode(SerializationMode.JSON_STREAM, settings).decodeToString(),
+        )
+    }
+
+    @Test
+    fun compareModes() {
+        for ((label, size, iterations) in listOf(
+            Triple("1 KB", 1024, 2_000),
+            Triple("64 KB", 64 * 1024, 100),
+            Triple("1 MB", 1024 * 1024, 8),
+        )) {
+            val settings = settingsOfSize(size)
+            val reads = HashMap<SerializationMode, Result>()
+            val writes = HashMap<SerializationMode, Result>()
+            for (mode in SerializationMode.values()) {
+                val serializer = serializer(mode)
+                val bytes = encode(mode, settings)
+                val output = ByteArrayOutputStream(bytes.size)
+                reads[mode] = measure(iterations) {
+                    runBlocking { serializer.readFrom(ByteArrayInputStream(bytes)) }
+                }
+                writes[mode] = measure(iterations) {
+                    output.reset()
+                    runBlocking { serializer.writeTo(settings, output) }
+                }
+                println(
+                    "$label $mode (${bytes.size} bytes): read %.0f bytes %.0f ns, write %.0f bytes %.0f ns".format(
+                        reads.getValue(mode).bytesPerOp,
+                        reads.getValue(mode).nanosPerOp,
+                        writes.getValue(mode).bytesPerOp,
+                        writes.getValue(mode).nanosPerOp,
+                    )
+                )
+            }
+            if (size >= 64 * 1024) {
+                // The String mode holds the whole file as bytes and as a String, at least twice.
+                assertTrue(
+                    reads.getValue(SerializationMode.JSON_STREAM).bytesPerOp <
+                        reads.getValue(SerializationMode.JSON_STRING).bytesPerOp - size
+                )
+                assertTrue(
+                    writes.getValue(SerializationMode.JSON_STREAM).bytesPerOp <
+                        writes.getValue(SerializationMode.JSON_STRING).bytesPerOp - size
+                )
+            }
+            assertTrue(
+                encode(SerializationMode.PROTOBUF, settings).size <
+                    encode(SerializationMode.JSON_STREAM, settings).size
+            )
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets.multiprocess
+
+import androidx.datastore.core.DataStore
+import androidx.datastore.core.DataStoreFactory
+import java.io.File
+import kotlin.system.measureNanoTime
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+/**
+ * Two writers, standing in for two processes, update a shared file every 10 ms for 10 seconds
+ * of virtual time. Compares the number of file writes, each of which is a lock, serialize and
+ * fsync, with and without [CoalescingDataStoreWriter].
+ *
+ * Most tests use [SharedFile], an in-memory model of the file, so that they run in virtual time
+ * and the number of writes is exact. `MultiProcessDataStoreFactory` can't be used in local
+ * tests because its cross-process lock needs a native library that only ships for Android
+ * devices. [fileBackedWrites] measures the same two writers against a real file with a
+ * single-process DataStore instead, which serializes and syncs the file on every
+ * `updateData` in the same way but has no file lock to wait for.
+ */
+class CoalescingDataStoreWriterBenchmark {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    data class Counter(val ticks: Long)
+
+    // Like a multi-process DataStore, writes are serialized by a file lock and each one takes
+    // WRITE_MS to serialize and sync.
+    private class SharedFile : DataStore<Counter> {
+        private val mutex = Mutex()
+        private val state = MutableStateFlow(Counter(0))
+        var syncs = 0
+
+        override val data: StateFlow<Counter> = state
+
+        override suspend fun updateData(transform: suspend (t: Counter) -> Counter): Counter =
+            mutex.withLock {
+                val updated = transform(state.value)
+                delay(WRITE_MS)
+                syncs++
+                state.value = updated
+                updated
+            }
+    }
+
+    @Test
+    fun coalescingCutsFileWrites() = runTest {
+        val direct = SharedFile()
+        val directStart = testScheduler.currentTime
+        List(WRITERS) {
+            launch {
+                repeat(UPDATES) {
+                    direct.updateData { it.copy(ticks = it.ticks + 1) }
+                    delay(UPDATE_INTERVAL_MS)
+                }
+            }
+        }.joinAll()
+        val directElapsed = testScheduler.currentTime - directStart
+
+        val coalesced = SharedFile()
+        val writers = List(WRITERS) { CoalescingDataStoreWriter(coalesced, this, flushIntervalMillis = 1_000) }
+        val coalescedStart = testScheduler.currentTime
+        writers.map { writer ->
+            launch {
+                repeat(UPDATES) {
+                    writer.update { it.copy(ticks = it.ticks + 1) }
+                    delay(UPDATE_INTERVAL_MS)
+                }
+            }
+        }.joinAll()
+        writers.forEach { it.flush() }
+        val coalescedElapsed = testScheduler.currentTime - coalescedStart
+
+        val total = WRITERS * UPDATES
+        println(
+            "direct: ${direct.syncs} syncs, %.0f updates/s; coalesced: ${coalesced.syncs} syncs, %.0f updates/s".format(
+                total * 1000.0 / directElapsed,
+                total * 1000.0 / coalescedElapsed,
+            )
+        )
+        assertEquals(total.toLong(), direct.data.value.ticks)
+        assertEquals(total.toLong(), coalesced.data.value.ticks)
+        assertEquals(total, direct.syncs)
+        assertTrue(coalesced.syncs <= total / 50)
+        assertTrue(coalescedElapsed < directElapsed)
+    }
+
+    @Test
+    fun writerReadsItsOwnWritesAndOthersSeeThemAfterFlush() = runTest {
+        val file = SharedFile()
+        val writer = CoalescingDataStoreWriter(file, backgroundScope, flushIntervalMillis = 1_000)
+        val otherProcess = CoalescingDataStoreWriter(file, backgroundScope, flushIntervalMillis = 1_000)
+
+        writer.update { it.copy(ticks = it.ticks + 1) }
+        assertEquals(1L, writer.data.first().ticks)
+        assertEquals(0L, otherProcess.data.first().ticks)
+
+        writer.flush()
+        assertEquals(1L, otherProcess.data.first().ticks)
+        assertEquals(1L, writer.data.first().ticks)
+        assertEquals(1L, writer.writes)
+
+        // Updates from both sides are merged rather than overwritten.
+        otherProcess.update { it.copy(ticks = it.ticks + 10) }
+        writer.update { it.copy(ticks = it.ticks + 1) }
+        otherProcess.flush()
+        writer.flush()
+        assertEquals(12L, file.data.value.ticks)
+    }
+
+    // Emits written values LAG_MS after updateData has returned, as a collector of a real
+    // DataStore may receive them.
+    private class LaggingFile(private val scope: CoroutineScope) : DataStore<Counter> {
+        private val state = MutableStateFlow(Counter(0))
+
+        override val data: StateFlow<Counter> = state
+
+        override suspend fun updateData(transform: suspend (t: Counter) -> Counter): Counter {
+            val updated = transform(state.value)
+            scope.launch {
+                delay(LAG_MS)
+                state.value = updated
+            }
+            return updated
+        }
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    @Test
+    fun writerKeepsReadingItsOwnWritesUntilTheStoreEmitsThem() = runTest {
+        val file = LaggingFile(backgroundScope)
+        val writer = CoalescingDataStoreWriter(file, backgroundScope)
+        val seen = ArrayList<Long>()
+        backgroundScope.launch { writer.data.collect { seen += it.ticks } }
+        runCurrent()
+
+        writer.update { it.copy(ticks = it.ticks + 1) }
+        runCurrent()
+        writer.flush()
+        runCurrent()
+        advanceTimeBy(LAG_MS + 1)
+        writer.update { it.copy(ticks = it.ticks + 1) }
+        runCurrent()
+
+        assertEquals(listOf(0L, 1L, 2L), seen.distinct())
+        assertEquals(seen.sorted(), seen)
+    }
+
+    @Test
+    fun fileBackedWrites() = runBlocking {
+        suspend fun measure(update: suspend (Int, (Time) -> Time) -> Unit): Long {
+            val start = System.nanoTime()
+            coroutineScope {
+                repeat(WRITERS) { writer ->
+                    launch(Dispatchers.Default) {
+                        repeat(FILE_UPDATES) { update(writer) { it.copy(lastUpdateMillis = it.lastUpdateMillis + 1) } }
+                    }
+                }
+            }
+            return System.nanoTime() - start
+        }
+
+        val total = WRITERS * FILE_UPDATES
+        val directScope = CoroutineScope(Dispatchers.IO + Job())
+        val direct = fileDataStore("direct.json", directScope)
+        val directNanos = measure { _, transform -> direct.updateData(transform) }
+        assertEquals(total.toLong(), direct.data.first().lastUpdateMillis)
+        directScope.cancel()
+
+        val coalescedScope = CoroutineScope(Dispatchers.IO + Job())
+        val coalesced = fileDataStore("coalesced.json", coalescedScope)
+        val writers = List(WRITERS) { CoalescingDataStoreWriter(coalesced, coalescedScope, flushIntervalMillis = 100) }
+        val coalescedNanos = measure { writer, transform -> writers[writer].update(transform) } +
+            measureNanoTime { writers.forEach { it.flush() } }
+        assertEquals(total.toLong(), coalesced.data.first().lastUpdateMillis)
+        val coalescedWrites = writers.sumOf { it.writes }
+        assertTrue(coalescedWrites < total)
+        coalescedScope.cancel()
+
+        println(
+            "file direct: $total writes, %.0f updates/s; coalesced: $coalescedWrites writes, %.0f updates/s".format(
+                total * 1e9 / directNanos,
+                total * 1e9 / coalescedNanos,
+            )
+        )
+    }
+
+    private fun fileDataStore(name: String, scope: CoroutineScope): DataStore<Time> = DataStoreFactory.create(
+        serializer = TimeSerializer,
+        scope = scope,
+        produceFile = { File(folder.root, name) },
+    )
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    @Test
+    fun explicitFlushCancelsTheScheduledFlush() = runTest {
+        val file = SharedFile()
+        val writer = CoalescingDataStoreWriter(file, backgroundScope, flushIntervalMillis = 1_000)
+
+        writer.update { it.copy(ticks = it.ticks + 1) }
+        writer.flush()
+        advanceTimeBy(500)
+        writer.update { it.copy(ticks = it.ticks + 1) }
+
+        // The flush scheduled by the first update would have written the second one by now.
+        advanceTimeBy(600)
+        assertEquals(1L, writer.writes)
+
+        advanceTimeBy(500)
+        assertEquals(2L, writer.writes)
+        assertEquals(2L, file.data.value.ticks)
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    @Test
+    fun failingTransformDoesNotCrashTheScheduledFlush() = runTest {
+        val file = SharedFile()
+        val writer = CoalescingDataStoreWriter(file, this)
+
+        writer.update { error("bad update") }
+        advanceTimeBy(CoalescingDataStoreWriter.DEFAULT_FLUSH_INTERVAL_MILLIS + 1)
+        assertEquals(0L, writer.writes)
+
+        writer.update { it.copy(ticks = it.ticks + 1) }
+        writer.flush()
+        assertEquals(1L, file.data.value.ticks)
+        assertEquals(1L, writer.writes)
+    }
+
+    private companion object {
+        const val LAG_MS = 50L
+        const val WRITERS = 2
+        const val UPDATES = 1_000
+        const val UPDATE_INTERVAL_MS = 10L
+        const val WRITE_MS = 5L
+        const val FILE_UPDATES = 200
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.datastore.snippets.preferences
+
+import androidx.datastore.preferences.core.booleanPreferencesKey
+import androidx.datastore.preferences.core.intPreferencesKey
+import java.io.File
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class ShardedPreferencesDataStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val scope = CoroutineScope(Dispatchers.IO + Job())
+
+    private fun shardFile(shard: Int) = File(folder.root, "flags_$shard.preferences_pb")
+
+    private val store by lazy {
+        ShardedPreferencesDataStore.create(SHARDS, scope) { shard -> shardFile(shard) }
+    }
+
+    private val flags = List(FLAGS) { booleanPreferencesKey("item_flag_$it") }
+
+    @After
+    fun tearDown() {
+        scope.cancel()
+    }
+
+    @Test
+    fun keysAreSpreadAcrossShardsAndMerged() = runBlocking {
+        flags.forEach { key -> store.update(key) { true } }
+
+        val perShard = flags.groupingBy { store.shardOf(it) }.eachCount()
+        assertEquals(SHARDS, perShard.size)
+        perShard.values.forEach { assertTrue(it > FLAGS / SHARDS / 2) }
+
+        val merged = store.data.first()
+        assertEquals(FLAGS, merged.asMap().size)
+        assertEquals(true, store[flags[123]].first())
+    }
+
+    @Test
+    fun writeOnlyRewritesItsOwnShard() = runBlocking {
+        flags.forEach { key -> store.update(key) { true } }
+        val sizes = List(SHARDS) { shardFile(it).length() }
+        val modified = List(SHARDS) { shardFile(it).lastModified() }
+        Thread.sleep(1_100)
+
+        val counter = intPreferencesKey("example_counter")
+        repeat(10) { store.update(counter) { (it ?: 0) + 1 } }
+
+        val owner = store.shardOf(counter)
+        for (shard in 0 until SHARDS) {
+            if (shard != owner) assertEquals(modified[shard], shardFile(shard).lastModified())
+        }
+        // Each increment rewrites one shard, about 1 / SHARDS of the total size.
+        println("shard file ${shardFile(owner).length()} bytes, single file would be ${sizes.sum()} bytes")
+        assertTrue(shardFile(owner).length() < sizes.sum() / 2)
+        assertEquals(10, store[counter].first())
+    }
+
+    @Test
+    fun editRejectsKeysOfOtherShards() = runBlocking {
+        val key = flags[0]
+        val foreign = flags.first { store.shardOf(it) != store.shardOf(key) }
+        try {
+            store.edit(key) { preferences ->
+                preferences[key] = true
+                preferences[foreign] = true
+            }
+            fail("Expected the edit to be rejected")
+        } catch (expected: IllegalArgumentException) {
+        }
+        assertEquals(null, store[key].first())
+    }
+
+    private companion object {
+        const val SHARDS = 8
+        const val FLAGS = 800
+    }
+}
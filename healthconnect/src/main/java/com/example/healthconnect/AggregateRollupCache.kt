@@ -0,0 +1,368 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import android.content.Context
+import androidx.health.connect.client.HealthConnectClient
+import androidx.health.connect.client.aggregate.AggregateMetric
+import androidx.health.connect.client.records.InstantaneousRecord
+import androidx.health.connect.client.records.IntervalRecord
+import androidx.health.connect.client.records.Record
+import androidx.health.connect.client.records.StepsRecord
+import androidx.health.connect.client.records.metadata.DataOrigin
+import androidx.health.connect.client.request.AggregateGroupByDurationRequest
+import androidx.health.connect.client.request.AggregateGroupByPeriodRequest
+import androidx.health.connect.client.time.TimeRangeFilter
+import androidx.room3.Dao
+import androidx.room3.Database
+import androidx.room3.Entity
+import androidx.room3.PrimaryKey
+import androidx.room3.Query
+import androidx.room3.Room
+import androidx.room3.RoomDatabase
+import androidx.room3.Upsert
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.LocalDateTime
+import java.time.Period
+import java.time.ZoneOffset
+import java.time.temporal.ChronoUnit
+import kotlin.reflect.KClass
+
+/**
+ * A finalized aggregate bucket. Bucket boundaries are local date-times, stored as epoch seconds
+ * at UTC so that they sort and compare as plain numbers.
+ */
+@Entity(
+    tableName = "rollup_bucket",
+    primaryKeys = ["metricKey", "dataOrigins", "granularity", "bucketStart"],
+)
+data class RollupBucketEntity(
+    val metricKey: String,
+    val dataOrigins: String,
+    val granularity: String,
+    val bucketStart: Long,
+    val bucketEnd: Long,
+    val value: Long,
+)
+
+/**
+ * The local time range of a record that contributed to cached buckets, so that the buckets can
+ * be invalidated when the record is deleted, since deletion changes only carry the record ID.
+ */
+@Entity(tableName = "rollup_record_span", primaryKeys = ["recordId", "metricKey"])
+data class RollupRecordSpanEntity(
+    val recordId: String,
+    val metricKey: String,
+    val start: Long,
+    val end: Long,
+)
+
+@Dao
+interface RollupBucketDao {
+    @Query(
+        "SELECT * FROM rollup_bucket WHERE metricKey = :metricKey AND dataOrigins = :dataOrigins " +
+            "AND granularity = :granularity AND bucketStart >= :start AND bucketStart < :end"
+    )
+    suspend fun buckets(
+        metricKey: String,
+        dataOrigins: String,
+        granularity: String,
+        start: Long,
+        end: Long,
+    ): List<RollupBucketEntity>
+
+    @Upsert
+    suspend fun upsert(buckets: List<RollupBucketEntity>)
+
+    @Query("DELETE FROM rollup_bucket WHERE metricKey = :metricKey AND bucketStart < :end AND bucketEnd > :start")
+    suspend fun invalidate(metricKey: String, start: Long, end: Long)
+
+    @Query("DELETE FROM rollup_bucket")
+    suspend fun clear()
+
+    @Query("SELECT * FROM rollup_record_span WHERE recordId IN (:recordIds)")
+    suspend fun spans(recordIds: List<String>): List<RollupRecordSpanEntity>
+
+    @Upsert
+    suspend fun upsertSpans(spans: List<RollupRecordSpanEntity>)
+
+    @Query("DELETE FROM rollup_record_span WHERE recordId IN (:recordIds)")
+    suspend fun deleteSpans(recordIds: List<String>)
+}
+
+@Database(
+    entities = [RollupBucketEntity::class, RollupRecordSpanEntity::class],
+    version = 1,
+    exportSchema = false,
+)
+abstract class RollupDatabase : RoomDatabase() {
+    abstract fun rollupBucketDao(): RollupBucketDao
+
+    companion object {
+        // The database only holds a cache, which can be rebuilt from Health Connect, so later
+        // schema changes can drop it instead of migrating it.
+        fun create(context: Context): RollupDatabase =
+            Room.databaseBuilder<RollupDatabase>(context.applicationContext, "health_rollups")
+                .fallbackToDestructiveMigration(dropAllTables = true)
+                .build()
+    }
+}
+
+enum class Granularity(val unit: ChronoUnit) {
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS),
+    MONTH(ChronoUnit.MONTHS);
+
+    fun bucketStart(time: LocalDateTime): LocalDateTime = when (this) {
+        MONTH -> time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1)
+        else -> time.truncatedTo(unit)
+    }
+
+    fun next(bucketStart: LocalDateTime): LocalDateTime = bucketStart.plus(1, unit)
+}
+
+/**
+ * A metric that the cache can store, and the record type whose changes invalidate it.
+ */
+class CachedMetric(
+    val key: String,
+    val metric: AggregateMetric<Long>,
+    val recordType: KClass<out Record>,
+) {
+    companion object {
+        val STEPS = CachedMetric("steps_count_total", StepsRecord.COUNT_TOTAL, StepsRecord::class)
+    }
+}
+
+data class RollupBucket(val start: LocalDateTime, val end: LocalDateTime, val value: Long)
+
+/**
+ * Aggregates [metric] into buckets of [granularity] between [start] and [end], keyed by the
+ * local start time of each bucket.
+ */
+fun interface RollupSource {
+    suspend fun aggregate(
+        metric: CachedMetric,
+        granularity: Granularity,
+        start: LocalDateTime,
+        end: LocalDateTime,
+        dataOrigins: Set<DataOrigin>,
+    ): Map<LocalDateTime, Long>
+}
+
+fun HealthConnectClient.rollupSource() = RollupSource { metric, granularity, start, end, dataOrigins ->
+    val timeRangeFilter = TimeRangeFilter.between(start, end)
+    when (granularity) {
+        Granularity.DAY, Granularity.MONTH -> {
+            val slicer = if (granularity == Granularity.DAY) Period.ofDays(1) else Period.ofMonths(1)
+            aggregateGroupByPeriod(
+                AggregateGroupByPeriodRequest(
+                    metrics = setOf(metric.metric),
+                    timeRangeFilter = timeRangeFilter,
+                    timeRangeSlicer = slicer,
+                    dataOriginFilter = dataOrigins,
+                )
+            ).associate { it.startTime to (it.result[metric.metric] ?: 0L) }
+        }
+        Granularity.MINUTE, Granularity.HOUR -> {
+            val slicer = if (granularity == Granularity.MINUTE) Duration.ofMinutes(1) else Duration.ofHours(1)
+            aggregateGroupByDuration(
+                AggregateGroupByDurationRequest(
+                    metrics = setOf(metric.metric),
+                    timeRangeFilter = timeRangeFilter,
+                    timeRangeSlicer = slicer,
+                    dataOriginFilter = dataOrigins,
+                )
+            ).associate {
+                LocalDateTime.ofInstant(it.startTime, it.zoneOffset) to (it.result[metric.metric] ?: 0L)
+            }
+        }
+    }
+}
+
+/**
+ * Answers bucketed aggregate queries from a local Room cache of finalized buckets, so that only
+ * buckets that were never fetched, and the open-ended bucket containing the current time, are
+ * read from Health Connect. Missing buckets that are next to each other are fetched with a
+ * single `aggregateGroupByPeriod` or `aggregateGroupByDuration` call.
+ *
+ * Finalized buckets can still change when a data source syncs late, so the cache must be kept
+ * up to date with [changeHandler], for example with [ChangeSyncEngine], which also passes it the
+ * app's own writes. Call [invalidate] right after writing records to see them before the next
+ * sync.
+ *
+ * Health Connect places each record in the local time of its own zone offset, so invalidation
+ * uses the offsets of the records too, and [clock]'s zone only for records that have none.
+ *
+ * Callers opt in by querying [buckets] instead of Health Connect, as
+ * [HealthConnectManager.monthlyStepTotals] does; the other aggregation calls of
+ * [HealthConnectManager] still read Health Connect directly.
+ */
+class AggregateRollupCache(
+    private val source: RollupSource,
+    private val dao: RollupBucketDao,
+    private val metrics: List<CachedMetric> = listOf(CachedMetric.STEPS),
+    private val clock: Clock = Clock.systemDefaultZone(),
+) {
+
+    suspend fun buckets(
+        metric: CachedMetric,
+        granularity: Granularity,
+        startTime: LocalDateTime,
+        endTime: LocalDateTime,
+        dataOrigins: Set<DataOrigin> = emptySet(),
+    ): List<RollupBucket> {
+        val originsKey = dataOrigins.map { it.packageName }.sorted().joinToString(",")
+        val now = LocalDateTime.now(clock)
+        val starts = generateSequence(granularity.bucketStart(startTime)) { granularity.next(it) }
+            .takeWhile { it < endTime }
+            .toList()
+        if (starts.isEmpty()) return emptyList()
+
+        val cached = dao.buckets(
+            metric.key,
+            originsKey,
+            granularity.name,
+            starts.first().toKey(),
+            granularity.next(starts.last()).toKey(),
+        ).associateBy { it.bucketStart }
+
+        val values = HashMap<LocalDateTime, Long>()
+        val toStore = ArrayList<RollupBucketEntity>()
+        // Group the buckets that have to be fetched into contiguous runs, one call per run.
+        var runStart: LocalDateTime? = null
+        var runEnd: LocalDateTime? = null
+        suspend fun fetchRun() {
+            val from = runStart ?: return
+            val fetched = source.aggregate(metric, granularity, from, runEnd!!, dataOrigins)
+            var bucket = from
+            while (bucket < runEnd!!) {
+                val value = fetched[bucket] ?: 0L
+                values[bucket] = value
+                val end = granularity.next(bucket)
+                // Only buckets that have fully elapsed are stored. The open bucket is always live.
+                if (end <= now) {
+                    toStore += RollupBucketEntity(
+                        metric.key, originsKey, granularity.name, bucket.toKey(), end.toKey(), value
+                    )
+                }
+                bucket = end
+            }
+            runStart = null
+            runEnd = null
+        }
+        for (start in starts) {
+            val hit = cached[start.toKey()]
+            if (hit != null) {
+                fetchRun()
+                values[start] = hit.value
+            } else {
+                if (runStart == null) runStart = start
+                runEnd = granularity.next(start)
+            }
+        }
+        fetchRun()
+        if (toStore.isNotEmpty()) dao.upsert(toStore)
+
+        return starts.map { RollupBucket(it, granularity.next(it), values[it] ?: 0L) }
+    }
+
+    /**
+     * Drops the cached buckets that [records] contribute to, and the buckets they contributed to
+     * before, if they were updated.
+     */
+    suspend fun invalidate(records: List<Record>) {
+        val spans = records.flatMap { record ->
+            val (start, end) = localSpan(record)
+            metrics.filter { it.recordType == record::class }
+                .map { RollupRecordSpanEntity(record.metadata.id, it.key, start, end) }
+        }
+        if (spans.isEmpty()) return
+        // Records that weren't written to Health Connect yet have no ID to track.
+        val tracked = spans.filter { it.recordId.isNotEmpty() }
+        val previous = tracked.map { it.recordId }.distinct().chunked(MAX_IDS_PER_QUERY).flatMap { dao.spans(it) }
+        for (span in spans + previous) dao.invalidate(span.metricKey, span.start, span.end)
+        if (tracked.isNotEmpty()) dao.upsertSpans(tracked)
+    }
+
+    suspend fun invalidate(record: Record) = invalidate(listOf(record))
+
+    /**
+     * Drops the cached buckets of the deleted records. Deletion changes only carry record IDs,
+     * so if a record was never seen by [invalidate], the whole cache is cleared instead.
+     */
+    suspend fun invalidateDeleted(recordIds: List<String>) {
+        val ids = recordIds.distinct()
+        val spans = ids.chunked(MAX_IDS_PER_QUERY).flatMap { dao.spans(it) }
+        val known = spans.mapTo(HashSet()) { it.recordId }
+        if (ids.all { it in known }) {
+            for (span in spans) dao.invalidate(span.metricKey, span.start, span.end)
+        } else {
+            dao.clear()
+        }
+        ids.chunked(MAX_IDS_PER_QUERY).forEach { dao.deleteSpans(it) }
+    }
+
+    /**
+     * Invalidates the cache from a stream of changes, including the app's own writes.
+     */
+    val changeHandler: ChangeBatchHandler = object : ChangeBatchHandler {
+        override val includesOwnWrites: Boolean get() = true
+
+        override suspend fun onUpserted(recordType: KClass<out Record>, records: List<Record>) {
+            if (metrics.none { it.recordType == recordType }) return
+            invalidate(records)
+        }
+
+        override suspend fun onDeleted(recordIds: List<String>) {
+            invalidateDeleted(recordIds)
+        }
+    }
+
+    private fun localSpan(record: Record): Pair<Long, Long> {
+        val start: Long
+        val end: Long
+        when (record) {
+            is IntervalRecord -> {
+                start = localKey(record.startTime, record.startZoneOffset)
+                end = localKey(record.endTime, record.endZoneOffset)
+            }
+            is InstantaneousRecord -> {
+                start = localKey(record.time, record.zoneOffset)
+                end = start
+            }
+            else -> {
+                start = localKey(recordTime(record), null)
+                end = start
+            }
+        }
+        // Instantaneous records are a single point, so widen them to cover their own bucket.
+        return start to end.coerceAtLeast(start + 1)
+    }
+
+    private fun localKey(time: Instant, offset: ZoneOffset?): Long =
+        LocalDateTime.ofInstant(time, offset ?: clock.zone).toKey()
+
+    private fun LocalDateTime.toKey(): Long = toEpochSecond(ZoneOffset.UTC)
+
+    private companion object {
+        const val MAX_IDS_PER_QUERY = 500
+    }
+}
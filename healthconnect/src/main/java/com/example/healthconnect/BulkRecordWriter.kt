@@ -0,0 +1,180 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import android.os.TransactionTooLargeException
+import androidx.health.connect.client.HealthConnectClient
+import androidx.health.connect.client.records.ExerciseRouteResult
+import androidx.health.connect.client.records.ExerciseSessionRecord
+import androidx.health.connect.client.records.Record
+import androidx.health.connect.client.records.SeriesRecord
+import kotlin.coroutines.cancellation.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * Inserts one chunk of records and returns their IDs, in the same order. Throws
+ * [TransactionTooLargeException] if the chunk doesn't fit in one transaction.
+ */
+fun interface RecordChunkSink<T> {
+    suspend fun insert(records: List<T>): List<String>
+}
+
+/**
+ * A sink that inserts the records with [HealthConnectClient.insertRecords]. Give every record a
+ * `clientRecordId` and `clientRecordVersion`, so that inserting a chunk again, for example after
+ * a failed write, updates the records instead of duplicating them.
+ */
+fun HealthConnectClient.recordChunkSink(): RecordChunkSink<Record> = RecordChunkSink { records ->
+    insertRecords(records).recordIdsList
+}
+
+/**
+ * Roughly how much of the IPC transaction a record takes, counted in samples: series records
+ * such as [androidx.health.connect.client.records.HeartRateRecord] carry all their samples, and
+ * exercise sessions can carry a whole route.
+ */
+fun recordWeight(record: Record): Int = 1 + when (record) {
+    is SeriesRecord<*> -> record.samples.size
+    is ExerciseSessionRecord -> {
+        val route = (record.exerciseRouteResult as? ExerciseRouteResult.Data)?.exerciseRoute
+        (route?.route?.size ?: 0) + record.segments.size + record.laps.size
+    }
+    else -> 0
+}
+
+class ChunkReport(
+    val index: Int,
+    val records: Int,
+    val attempts: Int,
+    /** How many times the chunk, or a part of it, was split in two to fit in a transaction. */
+    val splits: Int,
+    val latencyMs: Long,
+    val error: Exception?,
+)
+
+class BulkWriteResult(
+    /** The inserted IDs, in the order of the input records, or null for records that failed. */
+    val recordIds: List<String?>,
+    val chunks: List<ChunkReport>,
+    val elapsedMs: Long,
+) {
+    val insertedCount: Int get() = recordIds.count { it != null }
+    val failedChunks: List<ChunkReport> get() = chunks.filter { it.error != null }
+    val recordsPerSecond: Double get() = if (elapsedMs == 0L) 0.0 else insertedCount * 1000.0 / elapsedMs
+}
+
+/**
+ * Writes large lists of records, such as a year of history imported from a wearable, without
+ * exceeding the size of a single IPC transaction.
+ *
+ * Records are split into chunks of at most [maxRecordsPerChunk] records and at most
+ * [maxWeightPerChunk] total [weightOf]. Up to [maxInFlight] chunks are inserted at once, so the
+ * next chunk is already being sent while the previous one is being written. Quota errors are
+ * retried with a shared [AdaptiveBackoff]. A chunk that still doesn't fit in a transaction is
+ * split in two until it does. Any other failure fails only its own chunk, which is reported in
+ * the result so that the caller can retry or skip those records; as parts of a split chunk may
+ * have been inserted, retrying is only safe for records with a `clientRecordId`.
+ */
+class BulkRecordWriter<T>(
+    private val sink: RecordChunkSink<T>,
+    private val weightOf: (T) -> Int,
+    private val maxRecordsPerChunk: Int = 1000,
+    private val maxWeightPerChunk: Int = 20_000,
+    private val maxInFlight: Int = 2,
+    private val backoff: AdaptiveBackoff = AdaptiveBackoff(),
+    private val clockMs: () -> Long = System::currentTimeMillis,
+) {
+    init {
+        require(maxRecordsPerChunk > 0) { "maxRecordsPerChunk must be positive" }
+        require(maxInFlight > 0) { "maxInFlight must be positive" }
+    }
+
+    suspend fun write(records: List<T>, onChunk: (ChunkReport) -> Unit = {}): BulkWriteResult {
+        val start = clockMs()
+        val chunks = chunksOf(records)
+        val recordIds = arrayOfNulls<String>(records.size)
+        val permits = Semaphore(maxInFlight)
+        val reports = coroutineScope {
+            chunks.mapIndexed { index, range ->
+                async {
+                    permits.withPermit {
+                        val report = writeChunk(index, records.subList(range.first, range.last + 1)) { ids ->
+                            ids.forEachIndexed { i, id -> recordIds[range.first + i] = id }
+                        }
+                        onChunk(report)
+                        report
+                    }
+                }
+            }.awaitAll()
+        }
+        return BulkWriteResult(recordIds.asList(), reports, clockMs() - start)
+    }
+
+    private suspend fun writeChunk(
+        index: Int,
+        chunk: List<T>,
+        onInserted: (List<String>) -> Unit,
+    ): ChunkReport {
+        val start = clockMs()
+        var attempts = 0
+        var splits = 0
+        suspend fun insert(records: List<T>): List<String> = try {
+            backoff.withQuotaRetry {
+                attempts++
+                sink.insert(records)
+            }
+        } catch (e: TransactionTooLargeException) {
+            // Sending the same records again would fail the same way.
+            if (records.size == 1) throw e
+            splits++
+            val half = records.size / 2
+            insert(records.subList(0, half)) + insert(records.subList(half, records.size))
+        }
+        val error = try {
+            onInserted(insert(chunk))
+            null
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            e
+        }
+        return ChunkReport(index, chunk.size, attempts, splits, clockMs() - start, error)
+    }
+
+    private fun chunksOf(records: List<T>): List<IntRange> {
+        val chunks = ArrayList<IntRange>()
+        var chunkStart = 0
+        var weight = 0
+        records.forEachIndexed { i, record ->
+            val recordWeight = weightOf(record)
+            val full = i - chunkStart >= maxRecordsPerChunk || weight + recordWeight > maxWeightPerChunk
+            // A single record heavier than the limit still goes in a chunk of its own.
+            if (full && i > chunkStart) {
+                chunks += chunkStart until i
+                chunkStart = i
+                weight = 0
+            }
+            weight += recordWeight
+        }
+        if (chunkStart < records.size) chunks += chunkStart until records.size
+        return chunks
+    }
+}
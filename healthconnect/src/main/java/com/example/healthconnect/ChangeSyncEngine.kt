@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import android.content.Context
+import androidx.health.connect.client.HealthConnectClient
+import androidx.health.connect.client.changes.DeletionChange
+import androidx.health.connect.client.changes.UpsertionChange
+import androidx.health.connect.client.records.Record
+import androidx.health.connect.client.request.ChangesTokenRequest
+import kotlin.reflect.KClass
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+
+/**
+ * Persists the changes token, so that a sync killed part way through resumes from the last
+ * committed page.
+ */
+interface ChangesTokenStore {
+    suspend fun load(): String?
+    suspend fun save(token: String)
+    suspend fun clear()
+}
+
+class SharedPreferencesChangesTokenStore(
+    context: Context,
+    private val key: String = "changes_token",
+) : ChangesTokenStore {
+    private val prefs = context.applicationContext
+        .getSharedPreferences("health_connect_sync", Context.MODE_PRIVATE)
+
+    override suspend fun load(): String? = prefs.getString(key, null)
+
+    // commit() rather than apply(), so the token is on disk before the next page is requested.
+    override suspend fun save(token: String) {
+        prefs.edit().putString(key, token).commit()
+    }
+
+    override suspend fun clear() {
+        prefs.edit().remove(key).commit()
+    }
+}
+
+/**
+ * Receives the changes of one page, with upserts already grouped by record type.
+ */
+interface ChangeBatchHandler {
+    /** Whether to receive the app's own writes too. Most handlers already know about them. */
+    val includesOwnWrites: Boolean get() = false
+
+    suspend fun onUpserted(recordType: KClass<out Record>, records: List<Record>)
+    suspend fun onDeleted(recordIds: List<String>)
+}
+
+/**
+ * One page of changes returned by `getChanges`.
+ */
+class ChangePage(
+    val upserts: Map<KClass<out Record>, List<Record>>,
+    val deletedRecordIds: List<String>,
+    val nextChangesToken: String,
+    val hasMore: Boolean,
+)
+
+sealed interface ChangeSyncResult {
+    data class Completed(val pages: Int, val changes: Int) : ChangeSyncResult
+
+    /** The stored token expired. Read the data again and store a fresh token. */
+    object TokenExpired : ChangeSyncResult
+
+    /** No token was stored. Call [ChangeSyncEngine.start] first. */
+    object NotStarted : ChangeSyncResult
+}
+
+/**
+ * Streams changes from Health Connect one page at a time and checkpoints the changes token
+ * after each page has been handled.
+ *
+ * Pages are exposed as a cold [Flow], so the next page is only requested once the collector
+ * has finished with the previous one, and at most one page is held in memory. Quota errors are
+ * retried with [AdaptiveBackoff], which also paces the following requests.
+ */
+class ChangeSyncEngine(
+    private val healthConnectClient: HealthConnectClient,
+    private val tokenStore: ChangesTokenStore,
+    private val ownPackageName: String,
+    private val backoff: AdaptiveBackoff = AdaptiveBackoff(),
+) {
+
+    /**
+     * Emits the pages of changes since [token]. Throws [ChangesTokenExpiredException] if the
+     * token has expired. The app's own upserts are skipped unless [includeOwnWrites] is true.
+     */
+    fun changePages(token: String, includeOwnWrites: Boolean = false): Flow<ChangePage> = flow {
+        var nextChangesToken = token
+        do {
+            val response = backoff.withQuotaRetry {
+                healthConnectClient.getChanges(nextChangesToken)
+            }
+            if (response.changesTokenExpired) throw ChangesTokenExpiredException()
+
+            val upserts = LinkedHashMap<KClass<out Record>, MutableList<Record>>()
+            val deletions = ArrayList<String>()
+            for (change in response.changes) {
+                when (change) {
+                    is UpsertionChange -> {
+                        // Skip the app's own writes, which it already knows about.
+                        if (includeOwnWrites || change.record.metadata.dataOrigin.packageName != ownPackageName) {
+                            upserts.getOrPut(change.record::class) { ArrayList() }.add(change.record)
+                        }
+                    }
+                    is DeletionChange -> deletions.add(change.recordId)
+                }
+            }
+            emit(ChangePage(upserts, deletions, response.nextChangesToken, response.hasMore))
+            nextChangesToken = response.nextChangesToken
+        } while (response.hasMore)
+    }
+
+    /**
+     * Stores a fresh changes token for [recordTypes], to sync from now on.
+     */
+    suspend fun start(recordTypes: Set<KClass<out Record>>) {
+        val token = backoff.withQuotaRetry {
+            healthConnectClient.getChangesToken(ChangesTokenRequest(recordTypes = recordTypes))
+        }
+        tokenStore.save(token)
+    }
+
+    /**
+     * Applies all changes since the stored token to [handler]. The token is saved after each
+     * page, so if the process dies the next call resumes from the first unhandled page.
+     */
+    suspend fun sync(handler: ChangeBatchHandler): ChangeSyncResult {
+        val token = tokenStore.load() ?: return ChangeSyncResult.NotStarted
+        var pages = 0
+        var changes = 0
+        return try {
+            changePages(token, handler.includesOwnWrites).collect { page ->
+                for ((recordType, records) in page.upserts) {
+                    handler.onUpserted(recordType, records)
+                    changes += records.size
+                }
+                if (page.deletedRecordIds.isNotEmpty()) {
+                    handler.onDeleted(page.deletedRecordIds)
+                    changes += page.deletedRecordIds.size
+                }
+                tokenStore.save(page.nextChangesToken)
+                pages++
+            }
+            ChangeSyncResult.Completed(pages, changes)
+        } catch (e: ChangesTokenExpiredException) {
+            tokenStore.clear()
+            ChangeSyncResult.TokenExpired
+        }
+    }
+}
+
+class ChangesTokenExpiredException : Exception("Changes token expired")
@@ -124,6 +124,30 @@ class HealthConnectManager(
     }
     // [END android_healthconnect_upsert_steps_example]
 
+    // Every record needs a clientRecordId, so that chunks that are written again upsert their
+    // records instead of inserting duplicates. Buckets of rollupCache that the records fall in are
+    // invalidated, so that the import shows up before the next change sync.
+    suspend fun importHistory(
+        records: List<Record>,
+        rollupCache: AggregateRollupCache? = null,
+    ): BulkWriteResult {
+        val missingIds = records.count { it.metadata.clientRecordId == null }
+        require(missingIds == 0) { "$missingIds records have no clientRecordId" }
+        val writer = BulkRecordWriter(healthConnectClient.recordChunkSink(), ::recordWeight)
+        val result = writer.write(records) { chunk ->
+            Log.d(
+                "HealthConnect",
+                "Chunk ${chunk.index}: ${chunk.records} records in ${chunk.latencyMs} ms, ${chunk.splits} splits"
+            )
+        }
+        rollupCache?.invalidate(records)
+        result.failedChunks.forEach { chunk ->
+            Log.e("HealthConnect", "Failed to insert chunk ${chunk.index}", chunk.error)
+        }
+        Log.i("HealthConnect", "Inserted ${result.insertedCount} records at %.0f/s".format(result.recordsPerSecond))
+        return result
+    }
+
     suspend fun upsertStepsCall(
         healthConnectClient: HealthConnectClient,
         startTime: Instant,
@@ -768,6 +792,15 @@ class HealthConnectManager(
     }
     // [END android_healthconnect_period_bucket_aggregation]
 
+    // The monthly totals of aggregateStepsIntoMonths, read from rollupCache, so that only the
+    // current month and months that were never fetched are aggregated by Health Connect.
+    suspend fun monthlyStepTotals(
+        rollupCache: AggregateRollupCache,
+        startTime: LocalDateTime,
+        endTime: LocalDateTime,
+    ): List<RollupBucket> =
+        rollupCache.buckets(CachedMetric.STEPS, Granularity.MONTH, startTime, endTime)
+
     // [START android_healthconnect_duration_bucket_aggregation]
     suspend fun aggregateStepsIntoMinutes(
         healthConnectClient: HealthConnectClient,
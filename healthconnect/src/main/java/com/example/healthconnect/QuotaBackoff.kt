@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import android.health.connect.HealthConnectException
+import android.os.Build
+import android.os.DeadObjectException
+import android.os.RemoteException
+import android.os.TransactionTooLargeException
+import androidx.annotation.RequiresApi
+import kotlin.coroutines.cancellation.CancellationException
+import kotlin.random.Random
+import kotlinx.coroutines.delay
+
+/**
+ * Whether this exception is Health Connect rejecting a call because the app exceeded its
+ * rate limit quota, in which case the call can be retried later.
+ *
+ * The client surfaces the rate limit as an [IllegalStateException] or [RemoteException] whose
+ * message mentions the quota, so other exceptions of these types, such as an oversized
+ * transaction, a dead service or a programming error, are not quota errors.
+ */
+fun Throwable.isQuotaError(): Boolean {
+    if (this is CancellationException || this is TransactionTooLargeException || this is DeadObjectException) {
+        return false
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE && isPlatformRateLimit()) return true
+    if (this !is IllegalStateException && this !is RemoteException) return false
+    return message?.let { QUOTA_MESSAGE.containsMatchIn(it) } ?: false
+}
+
+@RequiresApi(Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+private fun Throwable.isPlatformRateLimit(): Boolean = generateSequence(this) { it.cause }.any {
+    it is HealthConnectException && it.errorCode == HealthConnectException.ERROR_RATE_LIMIT_EXCEEDED
+}
+
+private val QUOTA_MESSAGE = Regex("quota|rate limit", RegexOption.IGNORE_CASE)
+
+/**
+ * Backoff that adapts to how often Health Connect reports quota errors.
+ *
+ * Each quota error doubles the delay, up to [maxDelayMs]. Each success halves it, and while it
+ * is non-zero it is also used to pace successful calls, so that a caller slows down after
+ * hitting the quota and speeds back up as calls keep succeeding. Every delay is randomized by
+ * up to [jitter] to spread out concurrent callers. Safe to share between coroutines.
+ */
+class AdaptiveBackoff(
+    private val initialDelayMs: Long = 1_000L,
+    private val maxDelayMs: Long = 5 * 60_000L,
+    private val jitter: Double = 0.2,
+    private val random: Random = Random.Default,
+) {
+    private var currentDelayMs = 0L
+
+    @Synchronized
+    fun onQuotaError(): Long {
+        currentDelayMs = if (currentDelayMs == 0L) {
+            initialDelayMs
+        } else {
+            (currentDelayMs * 2).coerceAtMost(maxDelayMs)
+        }
+        return jittered(currentDelayMs)
+    }
+
+    @Synchronized
+    fun onSuccess(): Long {
+        currentDelayMs = (currentDelayMs / 2).let { if (it < initialDelayMs) 0L else it }
+        return jittered(currentDelayMs)
+    }
+
+    private fun jittered(delayMs: Long): Long {
+        if (delayMs == 0L || jitter == 0.0) return delayMs
+        val spread = (delayMs * jitter).toLong()
+        return delayMs - spread + random.nextLong(spread * 2 + 1)
+    }
+
+    /**
+     * Runs [block], retrying it after a backoff delay whenever it fails with a quota error,
+     * up to [maxAttempts] attempts in total.
+     */
+    suspend fun <T> withQuotaRetry(maxAttempts: Int = 8, block: suspend () -> T): T {
+        var attempt = 1
+        while (true) {
+            try {
+                val result = block()
+                val pacingMs = onSuccess()
+                if (pacingMs > 0) delay(pacingMs)
+                return result
+            } catch (e: Exception) {
+                if (!e.isQuotaError() || attempt >= maxAttempts) throw e
+                attempt++
+                delay(onQuotaError())
+            }
+        }
+    }
+}
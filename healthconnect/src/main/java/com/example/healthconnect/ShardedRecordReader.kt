@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import androidx.health.connect.client.HealthConnectClient
+import androidx.health.connect.client.records.InstantaneousRecord
+import androidx.health.connect.client.records.IntervalRecord
+import androidx.health.connect.client.records.Record
+import androidx.health.connect.client.records.metadata.DataOrigin
+import androidx.health.connect.client.request.ReadRecordsRequest
+import androidx.health.connect.client.time.TimeRangeFilter
+import java.time.Duration
+import java.time.Instant
+import kotlin.reflect.KClass
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+
+/**
+ * One page of records read from a time range.
+ */
+class RecordPage<T>(val records: List<T>, val pageToken: String?)
+
+/**
+ * Reads one page of records in `[start, end)`, continuing from [pageToken] if it is not null.
+ */
+fun interface RecordPageSource<T> {
+    suspend fun read(start: Instant, end: Instant, pageToken: String?): RecordPage<T>
+}
+
+fun <T : Record> HealthConnectClient.recordPageSource(
+    recordType: KClass<T>,
+    dataOriginFilter: Set<DataOrigin> = emptySet(),
+    pageSize: Int = 1000,
+): RecordPageSource<T> = RecordPageSource { start, end, pageToken ->
+    val response = readRecords(
+        ReadRecordsRequest(
+            recordType = recordType,
+            timeRangeFilter = TimeRangeFilter.between(start, end),
+            dataOriginFilter = dataOriginFilter,
+            pageSize = pageSize,
+            pageToken = pageToken,
+        )
+    )
+    RecordPage(response.records, response.pageToken)
+}
+
+/**
+ * The time used to assign a record to a single shard: the start time of interval records such
+ * as [androidx.health.connect.client.records.HeartRateRecord], or the time of instantaneous
+ * records.
+ */
+fun recordTime(record: Record): Instant = when (record) {
+    is IntervalRecord -> record.startTime
+    is InstantaneousRecord -> record.time
+    else -> error("Unsupported record type ${record::class}")
+}
+
+/**
+ * Reads a long time range by splitting it into shards that are read concurrently, while
+ * emitting the records as a single [Flow] in time order.
+ *
+ * At most [parallelism] shards are in flight at once, where a shard stays in flight until the
+ * collector has consumed it. Each shard buffers at most [bufferedPagesPerShard] pages, so at
+ * most `parallelism * bufferedPagesPerShard` pages are held in memory however long the range
+ * is. For full concurrency, size shards so that they fit in that buffer. Shards are started in
+ * time order, so the earliest unconsumed shard is always in flight.
+ *
+ * A record that overlaps a shard boundary is only emitted by the shard containing its
+ * [timeOf], so it isn't emitted twice. Quota errors are retried with a shared
+ * [AdaptiveBackoff], which slows every shard down together.
+ */
+class ShardedRecordReader<T>(
+    private val source: RecordPageSource<T>,
+    private val timeOf: (T) -> Instant,
+    private val parallelism: Int = 4,
+    private val bufferedPagesPerShard: Int = 4,
+    private val backoff: AdaptiveBackoff = AdaptiveBackoff(),
+) {
+    init {
+        require(parallelism > 0) { "parallelism must be positive" }
+    }
+
+    fun read(start: Instant, end: Instant, shardDuration: Duration): Flow<T> = flow {
+        val shards = shardsOf(start, end, shardDuration)
+        val permits = Semaphore(parallelism)
+        val channels = shards.map { Channel<List<T>>(bufferedPagesPerShard) }
+        coroutineScope {
+            launch {
+                shards.forEachIndexed { index, (shardStart, shardEnd) ->
+                    // Acquired in time order, before launching, so later shards can never
+                    // hold every permit while an earlier one waits.
+                    permits.acquire()
+                    launch {
+                        try {
+                            readShard(shardStart, shardEnd, channels[index])
+                        } finally {
+                            channels[index].close()
+                        }
+                    }
+                }
+            }
+            for (channel in channels) {
+                for (page in channel) {
+                    page.forEach { emit(it) }
+                }
+                permits.release()
+            }
+        }
+    }
+
+    private suspend fun readShard(start: Instant, end: Instant, channel: Channel<List<T>>) {
+        var pageToken: String? = null
+        do {
+            val page = backoff.withQuotaRetry { source.read(start, end, pageToken) }
+            val inShard = page.records.filter { record ->
+                val time = timeOf(record)
+                time >= start && time < end
+            }
+            if (inShard.isNotEmpty()) channel.send(inShard)
+            pageToken = page.pageToken
+        } while (pageToken != null)
+    }
+
+    private fun shardsOf(start: Instant, end: Instant, shardDuration: Duration): List<Pair<Instant, Instant>> {
+        require(!shardDuration.isZero && !shardDuration.isNegative) { "shardDuration must be positive" }
+        val shards = ArrayList<Pair<Instant, Instant>>()
+        var shardStart = start
+        while (shardStart < end) {
+            val shardEnd = minOf(shardStart + shardDuration, end)
+            shards += shardStart to shardEnd
+            shardStart = shardEnd
+        }
+        return shards
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import androidx.health.connect.client.records.StepsRecord
+import androidx.health.connect.client.records.metadata.DataOrigin
+import androidx.health.connect.client.records.metadata.Metadata
+import androidx.room3.Room
+import androidx.sqlite.driver.bundled.BundledSQLiteDriver
+import java.time.Clock
+import java.time.Instant
+import java.time.LocalDateTime
+import java.time.ZoneOffset
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.runTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class AggregateRollupCacheTest {
+
+    // Returns 10 for every bucket and records the ranges that were fetched.
+    private class FakeRollupSource : RollupSource {
+        val fetched = ArrayList<ClosedRange<LocalDateTime>>()
+
+        override suspend fun aggregate(
+            metric: CachedMetric,
+            granularity: Granularity,
+            start: LocalDateTime,
+            end: LocalDateTime,
+            dataOrigins: Set<DataOrigin>,
+        ): Map<LocalDateTime, Long> {
+            fetched += start..end
+            return generateSequence(start) { granularity.next(it) }.takeWhile { it < end }.associateWith { 10L }
+        }
+    }
+
+    private lateinit var db: RollupDatabase
+    private lateinit var source: FakeRollupSource
+    private lateinit var cache: AggregateRollupCache
+
+    @Before
+    fun setUp() {
+        db = Room.inMemoryDatabaseBuilder<RollupDatabase>()
+            .setDriver(BundledSQLiteDriver())
+            .build()
+        source = FakeRollupSource()
+        cache = AggregateRollupCache(
+            source,
+            db.rollupBucketDao(),
+            clock = Clock.fixed(Instant.parse("2026-03-10T12:30:00Z"), ZoneOffset.UTC),
+        )
+    }
+
+    @After
+    fun tearDown() = runBlocking {
+        db.close()
+    }
+
+    @Test
+    fun onlyMissingAndOpenBucketsAreFetched() = runTest {
+        assertEquals(13, queryToday().size)
+        assertEquals(listOf(hour(0)..hour(13)), source.fetched)
+
+        source.fetched.clear()
+        val buckets = queryToday()
+        assertEquals(13, buckets.size)
+        assertTrue(buckets.all { it.value == 10L })
+        assertEquals(listOf(hour(12)..hour(13)), source.fetched)
+    }
+
+    @Test
+    fun recordsAreInvalidatedInTheLocalTimeOfTheirOwnOffset() = runTest {
+        queryToday()
+        // 03:10Z at +02:00 is aggregated by Health Connect in the 05:00 local bucket.
+        cache.invalidate(steps(Instant.parse("2026-03-10T03:10:00Z"), ZoneOffset.ofHours(2)))
+
+        source.fetched.clear()
+        queryToday()
+        assertEquals(listOf(hour(5)..hour(6), hour(12)..hour(13)), source.fetched)
+    }
+
+    @Test
+    fun ownWritesReachTheChangeHandler() = runTest {
+        assertTrue(cache.changeHandler.includesOwnWrites)
+        queryToday()
+        cache.changeHandler.onUpserted(StepsRecord::class, listOf(steps(Instant.parse("2026-03-10T08:00:00Z"))))
+
+        source.fetched.clear()
+        queryToday()
+        assertEquals(listOf(hour(8)..hour(9), hour(12)..hour(13)), source.fetched)
+    }
+
+    @Test
+    fun deletingAKnownRecordOnlyDropsItsBuckets() = runTest {
+        cache.changeHandler.onUpserted(StepsRecord::class, listOf(steps(Instant.parse("2026-03-10T05:10:00Z"), id = "a")))
+        queryToday()
+        cache.changeHandler.onDeleted(listOf("a"))
+
+        source.fetched.clear()
+        queryToday()
+        assertEquals(listOf(hour(5)..hour(6), hour(12)..hour(13)), source.fetched)
+    }
+
+    @Test
+    fun deletingAnUnknownRecordClearsTheCache() = runTest {
+        queryToday()
+        cache.changeHandler.onDeleted(listOf("unknown"))
+
+        source.fetched.clear()
+        queryToday()
+        assertEquals(listOf(hour(0)..hour(13)), source.fetched)
+    }
+
+    @Test
+    fun updatedRecordsAlsoDropTheirPreviousBuckets() = runTest {
+        cache.invalidate(steps(Instant.parse("2026-03-10T05:10:00Z"), id = "a"))
+        queryToday()
+        cache.invalidate(steps(Instant.parse("2026-03-10T08:10:00Z"), id = "a"))
+
+        source.fetched.clear()
+        queryToday()
+        assertEquals(listOf(hour(5)..hour(6), hour(8)..hour(9), hour(12)..hour(13)), source.fetched)
+    }
+
+    private suspend fun queryToday() =
+        cache.buckets(CachedMetric.STEPS, Granularity.HOUR, hour(0), hour(13))
+
+    private fun hour(hour: Int): LocalDateTime = LocalDateTime.of(2026, 3, 10, 0, 0).plusHours(hour.toLong())
+
+    private fun steps(start: Instant, offset: ZoneOffset = ZoneOffset.UTC, id: String? = null) = StepsRecord(
+        metadata = if (id != null) Metadata.manualEntryWithId(id = id) else Metadata.manualEntry(),
+        startTime = start,
+        startZoneOffset = offset,
+        endTime = start.plusSeconds(600),
+        endZoneOffset = offset,
+        count = 100,
+    )
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import android.os.RemoteException
+import android.os.TransactionTooLargeException
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Writes a year of minute-level samples through a fake sink whose latency grows with the chunk
+ * size, and compares the virtual time taken with and without pipelining.
+ */
+class BulkRecordWriterBenchmark {
+
+    private val samples = (0 until 365 * 24 * 60).toList()
+
+    // Each insert costs a fixed IPC overhead plus a cost per record, and rejects oversized
+    // chunks with the exception an oversized binder transaction throws.
+    private class FakeSink(private val quotaErrors: Int = 0) : RecordChunkSink<Int> {
+        var calls = 0
+        var maxInFlight = 0
+        private var inFlight = 0
+        private var errorsLeft = quotaErrors
+
+        override suspend fun insert(records: List<Int>): List<String> {
+            calls++
+            if (records.size > MAX_TRANSACTION) throw TransactionTooLargeException()
+            inFlight++
+            maxInFlight = maxOf(maxInFlight, inFlight)
+            try {
+                delay(OVERHEAD_MS + records.size / RECORDS_PER_MS)
+                if (errorsLeft > 0) {
+                    errorsLeft--
+                    throw IllegalStateException("API call quota exceeded, availableQuota: 0.0 requested: 1")
+                }
+            } finally {
+                inFlight--
+            }
+            return records.map { "id-$it" }
+        }
+    }
+
+    private fun writeAll(
+        sink: FakeSink,
+        maxInFlight: Int,
+        maxRecordsPerChunk: Int = 1000,
+    ): Pair<BulkWriteResult, Long> {
+        lateinit var result: BulkWriteResult
+        var elapsed = 0L
+        runTest {
+            val writer = BulkRecordWriter(
+                sink,
+                weightOf = { 1 },
+                maxRecordsPerChunk = maxRecordsPerChunk,
+                maxInFlight = maxInFlight,
+                backoff = AdaptiveBackoff(initialDelayMs = 100, jitter = 0.0),
+                clockMs = { testScheduler.currentTime },
+            )
+            val start = testScheduler.currentTime
+            result = writer.write(samples)
+            elapsed = testScheduler.currentTime - start
+        }
+        return result to elapsed
+    }
+
+    @Test
+    fun everyRecordIsInsertedInOrder() {
+        val (result, _) = writeAll(FakeSink(), maxInFlight = 2)
+        assertTrue(result.failedChunks.isEmpty())
+        assertEquals(samples.map { "id-$it" }, result.recordIds)
+    }
+
+    @Test
+    fun pipeliningOverlapsChunks() {
+        val serialSink = FakeSink()
+        val (_, serial) = writeAll(serialSink, maxInFlight = 1)
+        val pipelinedSink = FakeSink()
+        val (result, pipelined) = writeAll(pipelinedSink, maxInFlight = 2)
+        println(
+            "${result.chunks.size} chunks: ${pipelined}ms pipelined vs ${serial}ms serial, " +
+                "%.0f records/s".format(result.recordsPerSecond)
+        )
+        assertEquals(1, serialSink.maxInFlight)
+        assertEquals(2, pipelinedSink.maxInFlight)
+        assertTrue(serial.toDouble() / pipelined >= 1.8)
+    }
+
+    @Test
+    fun quotaErrorsAreRetried() {
+        val (result, _) = writeAll(FakeSink(quotaErrors = 3), maxInFlight = 2)
+        assertTrue(result.failedChunks.isEmpty())
+        assertEquals(samples.size, result.insertedCount)
+        assertEquals(3, result.chunks.sumOf { it.attempts - 1 })
+    }
+
+    @Test
+    fun oversizedChunksAreSplitInsteadOfRetried() {
+        val sink = FakeSink()
+        val (result, _) = writeAll(sink, maxInFlight = 2, maxRecordsPerChunk = 3000)
+        assertTrue(result.failedChunks.isEmpty())
+        assertEquals(samples.map { "id-$it" }, result.recordIds)
+        // Each 3000 record chunk is rejected once, then its two halves are rejected once each.
+        assertTrue(result.chunks.all { it.splits == 3 || it.records <= MAX_TRANSACTION })
+        assertEquals(result.chunks.sumOf { it.attempts }, sink.calls)
+    }
+
+    @Test
+    fun aSingleOversizedRecordFailsWithoutRetrying() {
+        lateinit var result: BulkWriteResult
+        var calls = 0
+        runTest {
+            val writer = BulkRecordWriter<Int>(
+                sink = { records ->
+                    calls++
+                    if (7 in records) throw TransactionTooLargeException()
+                    records.map { "id-$it" }
+                },
+                weightOf = { 1 },
+            )
+            result = writer.write(listOf(7))
+        }
+        assertTrue(result.chunks.single().error is TransactionTooLargeException)
+        assertEquals(1, calls)
+    }
+
+    @Test
+    fun remoteExceptionsAreNotRetried() {
+        lateinit var result: BulkWriteResult
+        runTest {
+            val writer = BulkRecordWriter<Int>(
+                sink = { throw RemoteException() },
+                weightOf = { 1 },
+            )
+            result = writer.write((0 until 10).toList())
+        }
+        assertTrue(result.chunks.single().error is RemoteException)
+        assertEquals(1, result.chunks.single().attempts)
+    }
+
+    @Test
+    fun otherErrorsOnlyFailTheirChunk() {
+        lateinit var result: BulkWriteResult
+        runTest {
+            val writer = BulkRecordWriter<Int>(
+                sink = { records ->
+                    require(5 !in records) { "Invalid record" }
+                    records.map { "id-$it" }
+                },
+                weightOf = { 1 },
+                maxRecordsPerChunk = 4,
+            )
+            result = writer.write((0 until 12).toList())
+        }
+        assertEquals(listOf(1), result.failedChunks.map { it.index })
+        assertEquals(8, result.insertedCount)
+        assertNull(result.recordIds[5])
+        assertNull(result.chunks[0].error)
+    }
+
+    @Test
+    fun heavyRecordsMakeSmallerChunks() {
+        lateinit var result: BulkWriteResult
+        runTest {
+            val writer = BulkRecordWriter<Int>(
+                sink = { records -> records.map { "id-$it" } },
+                weightOf = { it },
+                maxWeightPerChunk = 100,
+            )
+            result = writer.write(listOf(60, 30, 20, 150, 10))
+        }
+        assertEquals(listOf(2, 1, 1, 1), result.chunks.map { it.records })
+    }
+
+    private companion object {
+        const val MAX_TRANSACTION = 1000
+        const val OVERHEAD_MS = 20L
+        const val RECORDS_PER_MS = 10
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import android.os.DeadObjectException
+import android.os.RemoteException
+import android.os.TransactionTooLargeException
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class QuotaBackoffTest {
+
+    @Test
+    fun onlyRateLimitErrorsAreQuotaErrors() {
+        assertTrue(IllegalStateException(QUOTA_MESSAGE).isQuotaError())
+        assertFalse(IllegalStateException("Record id must be set").isQuotaError())
+        assertFalse(IllegalStateException().isQuotaError())
+        assertFalse(TransactionTooLargeException().isQuotaError())
+        assertFalse(DeadObjectException().isQuotaError())
+        assertFalse(RemoteException().isQuotaError())
+        assertFalse(IllegalArgumentException(QUOTA_MESSAGE).isQuotaError())
+    }
+
+    @Test
+    fun otherErrorsAreRethrownWithoutRetrying() = runTest {
+        for (error in listOf(TransactionTooLargeException(), DeadObjectException(), IllegalStateException("bug"))) {
+            var attempts = 0
+            try {
+                AdaptiveBackoff(jitter = 0.0).withQuotaRetry {
+                    attempts++
+                    throw error
+                }
+                fail()
+            } catch (e: Exception) {
+                assertTrue(e === error)
+            }
+            assertEquals(1, attempts)
+            assertEquals(0L, testScheduler.currentTime)
+        }
+    }
+
+    @Test
+    fun quotaErrorsAreRetried() = runTest {
+        var attempts = 0
+        val result = AdaptiveBackoff(initialDelayMs = 100, jitter = 0.0).withQuotaRetry {
+            if (++attempts < 3) throw IllegalStateException(QUOTA_MESSAGE)
+            "done"
+        }
+        assertEquals("done", result)
+        assertEquals(3, attempts)
+    }
+
+    private companion object {
+        const val QUOTA_MESSAGE = "API call quota exceeded, availableQuota: 0.0 requested: 1"
+    }
+}
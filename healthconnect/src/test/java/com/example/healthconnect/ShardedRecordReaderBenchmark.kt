@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.healthconnect
+
+import java.time.Duration
+import java.time.Instant
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Reads 32 days of hourly samples through a fake page source with a fixed latency per page,
+ * and compares the virtual time taken at different parallelism caps.
+ */
+class ShardedRecordReaderBenchmark {
+
+    private val rangeStart = Instant.parse("2026-01-01T00:00:00Z")
+    private val rangeEnd = rangeStart + Duration.ofDays(32)
+
+    // Serves one sample per hour, PAGE_SIZE samples per page, after PAGE_LATENCY_MS. Like
+    // Health Connect with interval records, it also returns the sample just before the range.
+    private inner class FakeSource : RecordPageSource<Instant> {
+        var calls = 0
+
+        override suspend fun read(start: Instant, end: Instant, pageToken: String?): RecordPage<Instant> {
+            calls++
+            delay(PAGE_LATENCY_MS)
+            val samples = generateSequence(start.minus(Duration.ofHours(1))) { it + Duration.ofHours(1) }
+                .takeWhile { it < end }
+                .filter { it >= rangeStart }
+                .toList()
+            val offset = pageToken?.toInt() ?: 0
+            val page = samples.drop(offset).take(PAGE_SIZE)
+            val next = (offset + PAGE_SIZE).takeIf { it < samples.size }?.toString()
+            return RecordPage(page, next)
+        }
+    }
+
+    private fun readAll(parallelism: Int): Pair<List<Instant>, Long> {
+        var result: List<Instant> = emptyList()
+        var elapsed = 0L
+        runTest {
+            val reader = ShardedRecordReader(FakeSource(), timeOf = { it }, parallelism = parallelism)
+            val start = testScheduler.currentTime
+            result = reader.read(rangeStart, rangeEnd, Duration.ofDays(1)).toList()
+            elapsed = testScheduler.currentTime - start
+        }
+        return result to elapsed
+    }
+
+    @Test
+    fun recordsAreEmittedOnceInTimeOrder() {
+        val (records, _) = readAll(parallelism = 4)
+        assertEquals(32 * 24, records.size)
+        assertEquals(records.sorted(), records)
+        assertEquals(records.distinct(), records)
+    }
+
+    @Test
+    fun speedupIsNearLinearUpToTheCap() {
+        val (_, serial) = readAll(parallelism = 1)
+        for (parallelism in listOf(2, 4, 8)) {
+            val (_, parallel) = readAll(parallelism)
+            val speedup = serial.toDouble() / parallel
+            println("parallelism $parallelism: ${parallel}ms vs ${serial}ms serial, speedup %.2fx".format(speedup))
+            assertTrue("speedup $speedup at parallelism $parallelism", speedup >= parallelism * 0.9)
+        }
+    }
+
+    private companion object {
+        const val PAGE_SIZE = 8
+        const val PAGE_LATENCY_MS = 100L
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.coroutines.bestpractices
+
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+private const val DEFAULT_CONCURRENCY = 8
+
+/**
+ * Maps the elements with [transform] in parallel, running at most [concurrency] transforms at
+ * a time, and returns the results in the order of the elements.
+ *
+ * When [memoize] is true, elements with the same [keyOf] are transformed only once during the
+ * call, and share the result. If a transform fails, the others are cancelled and the exception
+ * is rethrown, as with any coroutineScope.
+ */
+suspend fun <T, K, R> Iterable<T>.concurrentMapBy(
+    keyOf: (T) -> K,
+    concurrency: Int = DEFAULT_CONCURRENCY,
+    memoize: Boolean = true,
+    transform: suspend (T) -> R,
+): List<R> {
+    require(concurrency > 0) { "concurrency must be positive: $concurrency" }
+    val permits = Semaphore(concurrency)
+    return coroutineScope {
+        if (memoize) {
+            val byKey = HashMap<K, Deferred<R>>()
+            map { element ->
+                byKey.getOrPut(keyOf(element)) { async { permits.withPermit { transform(element) } } }
+            }.awaitAll()
+        } else {
+            map { element -> async { permits.withPermit { transform(element) } } }.awaitAll()
+        }
+    }
+}
+
+/** Like [concurrentMapBy], with equal elements transformed once. */
+suspend fun <T, R> Iterable<T>.concurrentMap(
+    concurrency: Int = DEFAULT_CONCURRENCY,
+    transform: suspend (T) -> R,
+): List<R> = concurrentMapBy({ it }, concurrency, memoize = true, transform)
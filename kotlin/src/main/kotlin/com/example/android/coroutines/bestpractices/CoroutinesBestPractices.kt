@@ -40,9 +40,9 @@ sealed class LatestNewsUiState {
     object Loading : LatestNewsUiState()
 }
 class Article(val author: String = "")
-class ArticleWithAuthor(article: Article, author: String)
-class AuthorsRepository {
-    suspend fun getAuthor(id: String): String = "Author"
+class ArticleWithAuthor(val article: Article, val author: String)
+open class AuthorsRepository {
+    open suspend fun getAuthor(id: String): String = "Author"
     suspend fun getAllAuthors(): List<String> = emptyList()
 }
 sealed class Result<out R> {
@@ -72,6 +72,9 @@ private object BadExample {
 
 // [START android_kotlin_coroutines_best_practices_mainsafe]
 class NewsRepository(private val ioDispatcher: CoroutineDispatcher) {
+    // [START_EXCLUDE silent]
+    internal var placeholderNews: List<Article> = emptyList()
+    // [END_EXCLUDE]
 
     // As this operation is manually retrieving the news from the server
     // using a blocking HttpURLConnection, it needs to move the execution
@@ -79,7 +82,7 @@ class NewsRepository(private val ioDispatcher: CoroutineDispatcher) {
     suspend fun fetchLatestNews(): List<Article> {
         withContext(ioDispatcher) { /* ... implementation ... */ }
         // [START_EXCLUDE silent]
-        return emptyList()
+        return placeholderNews
         // [END_EXCLUDE]
     }
 }
@@ -106,6 +109,22 @@ class GetLatestNewsWithAuthorsUseCase(
 }
 // [END android_kotlin_coroutines_best_practices_mainsafe]
 
+// Same as GetLatestNewsWithAuthorsUseCase, but each author is fetched once, and up to
+// maxConcurrentRequests authors are fetched at the same time instead of one after the other.
+class GetLatestNewsWithAuthorsInParallelUseCase(
+    private val newsRepository: NewsRepository,
+    private val authorsRepository: AuthorsRepository,
+    private val maxConcurrentRequests: Int = 8,
+) {
+    suspend operator fun invoke(): Result<List<ArticleWithAuthor>> {
+        val news = newsRepository.fetchLatestNews()
+        val authors = news.concurrentMapBy({ it.author }, maxConcurrentRequests) { article ->
+            authorsRepository.getAuthor(article.author)
+        }
+        return Result.Success(news.zip(authors) { article, author -> ArticleWithAuthor(article, author) })
+    }
+}
+
 private object VmSnippetGood {
     // [START android_kotlin_coroutines_best_practices_vm_good]
     // DO create coroutines in the ViewModel
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.coroutines.bestpractices
+
+import com.google.common.truth.Truth.assertThat
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.withContext
+import org.junit.Test
+
+class ConcurrentMapTest {
+
+    // Looks up authors with a fixed latency, in virtual time.
+    private class FakeAuthorsRepository(scope: TestScope) : AuthorsRepository() {
+        private val dispatcher = StandardTestDispatcher(scope.testScheduler)
+        var calls = 0
+        var inFlight = 0
+        var maxInFlight = 0
+
+        override suspend fun getAuthor(id: String): String = withContext(dispatcher) {
+            calls++
+            inFlight++
+            maxInFlight = maxOf(maxInFlight, inFlight)
+            delay(LATENCY_MS)
+            inFlight--
+            "author $id"
+        }
+    }
+
+    private fun TestScope.newsRepository(articles: List<Article>) =
+        NewsRepository(UnconfinedTestDispatcher(testScheduler)).apply { placeholderNews = articles }
+
+    private fun Result<List<ArticleWithAuthor>>.authors() =
+        (this as Result.Success).data.map { it.article.author to it.author }
+
+    @Test
+    fun sequentialUseCaseTakesNTimesTheLatency() = runTest {
+        val articles = List(ARTICLES) { Article(author = "$it") }
+        val authorsRepository = FakeAuthorsRepository(this)
+
+        val result = GetLatestNewsWithAuthorsUseCase(newsRepository(articles), authorsRepository)()
+
+        assertThat(result.authors()).isEqualTo(articles.map { it.author to "author ${it.author}" })
+        assertThat(authorsRepository.calls).isEqualTo(ARTICLES)
+        assertThat(testScheduler.currentTime).isEqualTo(ARTICLES * LATENCY_MS)
+    }
+
+    @Test
+    fun parallelUseCaseMatchesSequentialUseCase() = runTest {
+        val articles = List(ARTICLES) { Article(author = "${it % AUTHORS}") }
+        val expected = GetLatestNewsWithAuthorsUseCase(newsRepository(articles), FakeAuthorsRepository(this))()
+        val start = testScheduler.currentTime
+        val authorsRepository = FakeAuthorsRepository(this)
+
+        val result = GetLatestNewsWithAuthorsInParallelUseCase(
+            newsRepository(articles),
+            authorsRepository,
+            maxConcurrentRequests = LIMIT,
+        )()
+
+        assertThat(result.authors()).isEqualTo(expected.authors())
+        // Each author is fetched once, LIMIT at a time.
+        assertThat(authorsRepository.calls).isEqualTo(AUTHORS)
+        assertThat(authorsRepository.maxInFlight).isEqualTo(LIMIT)
+        assertThat(testScheduler.currentTime - start).isEqualTo((AUTHORS + LIMIT - 1) / LIMIT * LATENCY_MS)
+    }
+
+    @Test
+    fun boundedFanOutTakesCeilOfNOverLimitTimesTheLatency() = runTest {
+        val authorsRepository = FakeAuthorsRepository(this)
+        val ids = List(ARTICLES) { "$it" }
+        val authors = ids.concurrentMap(concurrency = LIMIT) { authorsRepository.getAuthor(it) }
+
+        assertThat(authors).isEqualTo(ids.map { "author $it" })
+        assertThat(authorsRepository.maxInFlight).isEqualTo(LIMIT)
+        assertThat(testScheduler.currentTime).isEqualTo((ARTICLES + LIMIT - 1) / LIMIT * LATENCY_MS)
+    }
+
+    @Test
+    fun withoutMemoizationEveryElementIsLookedUp() = runTest {
+        val authorsRepository = FakeAuthorsRepository(this)
+        val articles = List(ARTICLES) { Article(author = "${it % AUTHORS}") }
+        articles.concurrentMapBy({ it.author }, LIMIT, memoize = false) { authorsRepository.getAuthor(it.author) }
+
+        assertThat(authorsRepository.calls).isEqualTo(ARTICLES)
+    }
+
+    private companion object {
+        const val ARTICLES = 100
+        const val AUTHORS = 20
+        const val LIMIT = 8
+        const val LATENCY_MS = 100L
+    }
+}
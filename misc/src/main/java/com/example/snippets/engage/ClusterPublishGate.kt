@@ -0,0 +1,134 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.engage
+
+import android.content.Context
+import com.google.android.engage.common.datamodel.ClusterType
+import com.google.android.engage.service.Intents
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+
+data class PublishedFingerprint(val fingerprint: String, val publishedAtMillis: Long)
+
+/**
+ * Remembers the fingerprint of the last successfully published content for each cluster type.
+ */
+interface PublishedFingerprintStore {
+    fun get(clusterType: Int): PublishedFingerprint?
+    fun put(clusterType: Int, published: PublishedFingerprint)
+    fun remove(clusterType: Int)
+}
+
+class SharedPreferencesFingerprintStore(context: Context) : PublishedFingerprintStore {
+    private val prefs = context.applicationContext
+        .getSharedPreferences("engage_published_fingerprints", Context.MODE_PRIVATE)
+
+    override fun get(clusterType: Int): PublishedFingerprint? {
+        val fingerprint = prefs.getString(clusterType.toString(), null) ?: return null
+        return PublishedFingerprint(fingerprint, prefs.getLong(publishedAtKey(clusterType), 0))
+    }
+
+    override fun put(clusterType: Int, published: PublishedFingerprint) {
+        prefs.edit()
+            .putString(clusterType.toString(), published.fingerprint)
+            .putLong(publishedAtKey(clusterType), published.publishedAtMillis)
+            .apply()
+    }
+
+    override fun remove(clusterType: Int) {
+        prefs.edit().remove(clusterType.toString()).remove(publishedAtKey(clusterType)).apply()
+    }
+
+    private fun publishedAtKey(clusterType: Int) = "${clusterType}_published_at"
+}
+
+/**
+ * Skips publishing a cluster when its content is identical to what was last published, which
+ * avoids the publish call and the follow-up publish status update on unchanged runs.
+ *
+ * When the Engage service drops a cluster, it asks for it again with a broadcast, and
+ * [forgetPublishedCluster] makes the next run publish it. As a safety net, a publish older than
+ * [maxAgeMillis] is repeated even if the content is unchanged. The default is three periods of
+ * [EngagePublisher.publishPeriodically], so that unchanged periodic runs are skipped and only
+ * every third one republishes.
+ */
+class ClusterPublishGate(
+    private val store: PublishedFingerprintStore,
+    private val maxAgeMillis: Long = MAX_AGE_PERIODS * TimeUnit.HOURS.toMillis(Constants.REPEAT_INTERVAL),
+    private val clockMs: () -> Long = System::currentTimeMillis,
+) {
+
+    fun shouldPublish(clusterType: Int, fingerprint: String): Boolean {
+        val published = store.get(clusterType) ?: return true
+        return published.fingerprint != fingerprint || clockMs() - published.publishedAtMillis >= maxAgeMillis
+    }
+
+    // Only record the fingerprint once the publish succeeded, so failed publishes are retried.
+    fun onPublished(clusterType: Int, fingerprint: String) {
+        store.put(clusterType, PublishedFingerprint(fingerprint, clockMs()))
+    }
+
+    private companion object {
+        const val MAX_AGE_PERIODS = 3
+    }
+}
+
+/**
+ * Forgets the published fingerprint of the cluster that the Engage service asks to publish with
+ * [action], since the service only asks when it doesn't have the cluster, so that the requested
+ * publish isn't skipped as unchanged.
+ */
+fun forgetPublishedCluster(context: Context, action: String?) {
+    val clusterType = when (action) {
+        Intents.ACTION_PUBLISH_RECOMMENDATION -> ClusterType.TYPE_RECOMMENDATION
+        Intents.ACTION_PUBLISH_FEATURED -> ClusterType.TYPE_FEATURED
+        Intents.ACTION_PUBLISH_CONTINUATION -> ClusterType.TYPE_CONTINUATION
+        else -> return
+    }
+    SharedPreferencesFingerprintStore(context).remove(clusterType)
+}
+
+/**
+ * Fingerprints the fields that [ItemToEntityConverter] maps into Engage entities, so two lists
+ * of items produce the same fingerprint exactly when they would publish the same entities.
+ */
+fun fingerprintOf(items: List<AppData>, vararg extras: String): String {
+    val digest = MessageDigest.getInstance("SHA-256")
+    fun update(value: String) {
+        digest.update(value.toByteArray())
+        digest.update(0)
+    }
+    extras.forEach(::update)
+    update(items.size.toString())
+    for (item in items) {
+        update(item.title)
+        update(item.author)
+    }
+    return digest.digest().joinToString("") { "%02x".format(it) }
+}
+
+/**
+ * The fingerprint of the content that [publishType] would publish, or null if it can't be
+ * fingerprinted and must always be published.
+ */
+fun ClusterRequestFactory.fingerprintFor(publishType: String?, isAccountSignedIn: Boolean): String? =
+    when (publishType) {
+        Constants.PUBLISH_TYPE_RECOMMENDATIONS -> recommendationsFingerprint()
+        Constants.PUBLISH_TYPE_CONTINUATION -> continuationFingerprint()
+        Constants.PUBLISH_TYPE_USER_ACCOUNT_MANAGEMENT -> "signedIn=$isAccountSignedIn"
+        else -> null
+    }
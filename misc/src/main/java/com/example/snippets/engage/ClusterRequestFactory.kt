@@ -95,6 +95,16 @@ class ClusterRequestFactory(context: Context) {
         com.google.android.engage.service.PublishUserAccountManagementRequest.Builder()
             .setSignInCardEntity(signInCard)
             .build()
+
+    // [START_EXCLUDE]
+    fun recommendationsFingerprint(): String =
+        fingerprintOf(appDataRepository.getRecommendations(), Locale.getDefault().toLanguageTag())
+
+    fun continuationFingerprint(): String =
+        fingerprintOf(appDataRepository.getContinuationData(), Locale.getDefault().toLanguageTag())
+
+    fun hasContinuationData(): Boolean = appDataRepository.getContinuationData().isNotEmpty()
+    // [END_EXCLUDE]
 }
 // [END android_engage_cluster_request_factory_implementation]
 
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.engage
+
+import android.content.Context
+import android.util.Log
+import androidx.work.CoroutineWorker
+import androidx.work.WorkerParameters
+import com.google.android.engage.common.datamodel.ClusterType
+import com.google.android.engage.service.AppEngageException
+import com.google.android.engage.service.AppEngagePublishClient
+import com.google.android.engage.service.AppEngagePublishStatusCode
+import com.google.android.engage.service.ServiceAvailabilityRequest
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.tasks.await
+
+/**
+ * Publishes every pending cluster type in one run: a single availability query covers all of
+ * them, the publishes run in parallel, and a failing type is backed off on its own instead of
+ * failing or retrying the whole run.
+ */
+@SuppressWarnings("unused")
+class CoalescedEngageWorker(context: Context, workerParams: WorkerParameters) : CoroutineWorker(context, workerParams) {
+    private val client = AppEngagePublishClient(context)
+    private val clusterRequestFactory = ClusterRequestFactory(context)
+    private val publishGate = ClusterPublishGate(SharedPreferencesFingerprintStore(context))
+    private val pendingStore = PendingPublishStore(context)
+
+    private sealed interface Outcome {
+        object Unchanged : Outcome
+        data class Published(val statusCode: Int) : Outcome
+        data class Failed(val statusCode: Int, val recoverable: Boolean) : Outcome
+    }
+
+    override suspend fun doWork(): Result {
+        val due = pendingStore.due(System.currentTimeMillis())
+        val clusterTypes = due.keys.associateWith { clusterTypeFor(it) }
+        for ((publishType, clusterType) in clusterTypes) {
+            if (clusterType == ClusterType.TYPE_UNKNOWN) {
+                Log.w(TAG, "Dropping unknown publish type $publishType")
+                pendingStore.complete(publishType, due.getValue(publishType))
+            }
+        }
+        val publishable = clusterTypes.filterValues { it != ClusterType.TYPE_UNKNOWN }
+
+        if (publishable.isNotEmpty()) {
+            val request = ServiceAvailabilityRequest.Builder()
+                .apply { publishable.values.distinct().forEach { addIntendedClusterType(it) } }
+                .build()
+            val availabilityMap = try {
+                client.isServiceAvailable(request).await()
+            } catch (e: CancellationException) {
+                // The worker was stopped. The types stay pending for the next run.
+                throw e
+            } catch (e: Exception) {
+                Log.w(TAG, "Availability check failed, backing off all pending types", e)
+                publishable.keys.forEach { backOff(it, due.getValue(it)) }
+                return finish()
+            }
+
+            val (available, unavailable) = publishable.entries
+                .partition { (_, clusterType) -> availabilityMap[clusterType] == true }
+            for ((publishType, _) in unavailable) {
+                Log.i(TAG, "Engage service unavailable for $publishType, backing off")
+                backOff(publishType, due.getValue(publishType))
+            }
+
+            val outcomes = coroutineScope {
+                available.map { (publishType, clusterType) ->
+                    async { publishType to publish(publishType, clusterType) }
+                }.awaitAll()
+            }
+
+            for ((publishType, outcome) in outcomes) {
+                if (outcome is Outcome.Failed && outcome.recoverable) {
+                    backOff(publishType, due.getValue(publishType))
+                } else {
+                    if (outcome is Outcome.Failed) Log.w(TAG, "Dropping $publishType after a non-recoverable error")
+                    pendingStore.complete(publishType, due.getValue(publishType))
+                }
+            }
+            overallStatus(outcomes.map { it.second })?.let { client.updatePublishStatus(it) }
+        }
+        return finish()
+    }
+
+    private suspend fun publish(publishType: String, clusterType: Int): Outcome {
+        val fingerprint = clusterRequestFactory.fingerprintFor(publishType, isEngageAccountSignedIn())
+        if (fingerprint != null && !publishGate.shouldPublish(clusterType, fingerprint)) {
+            return Outcome.Unchanged
+        }
+        return try {
+            val statusCode = when (publishType) {
+                Constants.PUBLISH_TYPE_RECOMMENDATIONS -> {
+                    client.publishRecommendationClusters(
+                        clusterRequestFactory.constructRecommendationClustersRequest()
+                    ).await()
+                    AppEngagePublishStatusCode.PUBLISHED
+                }
+                Constants.PUBLISH_TYPE_CONTINUATION -> {
+                    if (clusterRequestFactory.hasContinuationData()) {
+                        client.publishContinuationCluster(
+                            clusterRequestFactory.constructContinuationClusterRequest()
+                        ).await()
+                    } else {
+                        client.deleteContinuationCluster().await()
+                    }
+                    AppEngagePublishStatusCode.PUBLISHED
+                }
+                else -> {
+                    if (isEngageAccountSignedIn()) {
+                        client.deleteUserManagementCluster().await()
+                        AppEngagePublishStatusCode.PUBLISHED
+                    } else {
+                        client.publishUserAccountManagementRequest(
+                            clusterRequestFactory.constructUserAccountManagementClusterRequest()
+                        ).await()
+                        AppEngagePublishStatusCode.NOT_PUBLISHED_REQUIRES_SIGN_IN
+                    }
+                }
+            }
+            fingerprint?.let { publishGate.onPublished(clusterType, it) }
+            Outcome.Published(statusCode)
+        } catch (e: AppEngageException) {
+            Log.d(TAG, "Publishing $publishType failed with error code ${e.errorCode}")
+            Outcome.Failed(e.publishStatusCode, e.isRecoverable)
+        } catch (e: CancellationException) {
+            // The worker was stopped, so the publish stays pending instead of failing.
+            throw e
+        } catch (e: Exception) {
+            // Unexpected errors are retried with backoff, up to MAX_PUBLISHING_ATTEMPTS.
+            Log.w(TAG, "Publishing $publishType failed", e)
+            Outcome.Failed(AppEngagePublishStatusCode.NOT_PUBLISHED_SERVICE_ERROR, recoverable = true)
+        }
+    }
+
+    // Sign-in takes precedence since it applies to the whole app, then any successful publish,
+    // then the first failure. A run in which nothing changed does not update the status at all.
+    private fun overallStatus(outcomes: List<Outcome>): Int? {
+        val published = outcomes.filterIsInstance<Outcome.Published>().map { it.statusCode }
+        return when {
+            AppEngagePublishStatusCode.NOT_PUBLISHED_REQUIRES_SIGN_IN in published ->
+                AppEngagePublishStatusCode.NOT_PUBLISHED_REQUIRES_SIGN_IN
+            published.isNotEmpty() -> AppEngagePublishStatusCode.PUBLISHED
+            else -> outcomes.filterIsInstance<Outcome.Failed>().firstOrNull()?.statusCode
+        }
+    }
+
+    private fun backOff(publishType: String, generation: Long) {
+        val attempts = pendingStore.attempts(publishType)
+        if (attempts >= Constants.MAX_PUBLISHING_ATTEMPTS) {
+            Log.w(TAG, "Giving up on $publishType after $attempts attempts")
+            pendingStore.complete(publishType, generation)
+            return
+        }
+        val delayMillis = CoalescingEngagePublisher.BASE_BACKOFF_MILLIS shl attempts
+        pendingStore.onRetry(publishType, System.currentTimeMillis() + delayMillis)
+    }
+
+    // Types that are backing off stay pending. Retrying lets WorkManager run the worker again
+    // after the backoff of the work request, and types that are still not due are skipped then.
+    private fun finish(): Result = if (pendingStore.hasPending()) Result.retry() else Result.success()
+
+    private fun clusterTypeFor(publishType: String): Int = when (publishType) {
+        Constants.PUBLISH_TYPE_RECOMMENDATIONS -> ClusterType.TYPE_RECOMMENDATION
+        Constants.PUBLISH_TYPE_CONTINUATION -> ClusterType.TYPE_CONTINUATION
+        Constants.PUBLISH_TYPE_USER_ACCOUNT_MANAGEMENT -> ClusterType.TYPE_ENGAGEMENT
+        else -> ClusterType.TYPE_UNKNOWN
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.engage
+
+import android.content.Context
+import androidx.work.BackoffPolicy
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import java.util.concurrent.TimeUnit
+
+/**
+ * Alternative to [EngagePublisher] that coalesces publish requests for several cluster types
+ * into a single [CoalescedEngageWorker] run, instead of one worker run per publish type.
+ */
+@SuppressWarnings("unused")
+object CoalescingEngagePublisher {
+    private const val WORK_NAME = "EngageCoalesced"
+    internal const val BASE_BACKOFF_MILLIS = 30_000L
+
+    fun request(context: Context, vararg publishTypes: String) {
+        PendingPublishStore(context).add(publishTypes.toSet())
+        val workRequest = OneTimeWorkRequestBuilder<CoalescedEngageWorker>()
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BASE_BACKOFF_MILLIS, TimeUnit.MILLISECONDS)
+            .build()
+        // A new request replaces a run that is waiting for its backoff, so it runs right away.
+        // A run in progress is stopped too. The types it was publishing are still pending, as
+        // they are only removed once published, so the new run publishes all of them.
+        WorkManager.getInstance(context)
+            .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE, workRequest)
+    }
+}
+
+/**
+ * Persists the publish types waiting to be published, along with per-type backoff state.
+ *
+ * Types stay pending until [complete] is called after they were published, so they survive a
+ * run that is stopped or killed halfway.
+ */
+internal class PendingPublishStore(context: Context) {
+    private val prefs = context.applicationContext
+        .getSharedPreferences("engage_pending_publishes", Context.MODE_PRIVATE)
+
+    fun add(publishTypes: Set<String>) = synchronized(lock) {
+        val editor = prefs.edit().putStringSet(KEY_PENDING, pending() + publishTypes)
+        // Each request gets a new generation, so that a run still publishing the previous
+        // content can't complete the new request.
+        for (publishType in publishTypes) {
+            editor.putLong(generationKey(publishType), prefs.getLong(generationKey(publishType), 0) + 1)
+        }
+        editor.apply()
+    }
+
+    /**
+     * Returns the pending types whose backoff has elapsed at [nowMillis], with the generation of
+     * their latest request.
+     */
+    fun due(nowMillis: Long): Map<String, Long> = synchronized(lock) {
+        pending()
+            .filter { prefs.getLong(nextAttemptKey(it), 0) <= nowMillis }
+            .associateWith { prefs.getLong(generationKey(it), 0) }
+    }
+
+    fun hasPending(): Boolean = synchronized(lock) { pending().isNotEmpty() }
+
+    /**
+     * Clears the backoff of [publishType] and removes it, unless it was requested again since
+     * [due] returned [generation], in which case the newer request stays pending.
+     */
+    fun complete(publishType: String, generation: Long) = synchronized(lock) {
+        val editor = prefs.edit()
+            .remove(attemptsKey(publishType))
+            .remove(nextAttemptKey(publishType))
+        if (prefs.getLong(generationKey(publishType), 0) == generation) {
+            editor.putStringSet(KEY_PENDING, pending() - publishType)
+                .remove(generationKey(publishType))
+        }
+        editor.apply()
+    }
+
+    fun attempts(publishType: String): Int = synchronized(lock) {
+        prefs.getInt(attemptsKey(publishType), 0)
+    }
+
+    fun onRetry(publishType: String, nextAttemptMillis: Long) = synchronized(lock) {
+        prefs.edit()
+            .putInt(attemptsKey(publishType), attempts(publishType) + 1)
+            .putLong(nextAttemptKey(publishType), nextAttemptMillis)
+            .apply()
+    }
+
+    private fun pending(): Set<String> = prefs.getStringSet(KEY_PENDING, emptySet()).orEmpty()
+
+    private fun attemptsKey(publishType: String) = "attempts_$publishType"
+    private fun nextAttemptKey(publishType: String) = "next_$publishType"
+    private fun generationKey(publishType: String) = "generation_$publishType"
+
+    private companion object {
+        const val KEY_PENDING = "pending"
+        val lock = Any()
+    }
+}
@@ -32,6 +32,9 @@ class EngageBroadcastReceiver : BroadcastReceiver() {
     // DO NOT publish all clusters at once.
     override fun onReceive(context: Context?, intent: Intent?) {
         if (intent == null || context == null) return
+        // [START_EXCLUDE silent]
+        forgetPublishedCluster(context, intent.action)
+        // [END_EXCLUDE]
         when (intent.action) {
             com.google.android.engage.service.Intents.ACTION_PUBLISH_RECOMMENDATION
             -> EngagePublisher.publishOneTime(context, Constants.PUBLISH_TYPE_RECOMMENDATIONS)
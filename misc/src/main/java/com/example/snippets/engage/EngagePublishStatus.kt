@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.engage
+
+import android.util.Log
+import com.google.android.engage.service.AppEngageErrorCode
+import com.google.android.engage.service.AppEngageException
+import com.google.android.engage.service.AppEngagePublishClient
+import com.google.android.engage.service.AppEngagePublishStatusCode
+import com.google.android.engage.service.PublishStatusRequest
+
+// Publishing helpers shared by EngageWorker and CoalescedEngageWorker.
+
+internal fun isEngageAccountSignedIn(): Boolean {
+    // Implement your app's sign-in check logic here.
+    return true
+}
+
+/** The publish status to report after publishing failed with this exception. */
+internal val AppEngageException.publishStatusCode: Int
+    get() = when (errorCode) {
+        AppEngageErrorCode.SERVICE_CALL_INVALID_ARGUMENT,
+        AppEngageErrorCode.SERVICE_CALL_PERMISSION_DENIED ->
+            AppEngagePublishStatusCode.NOT_PUBLISHED_CLIENT_ERROR
+        else -> AppEngagePublishStatusCode.NOT_PUBLISHED_SERVICE_ERROR
+    }
+
+/** Whether publishing again later can succeed, such as after a threading issue. */
+internal val AppEngageException.isRecoverable: Boolean
+    get() = when (errorCode) {
+        AppEngageErrorCode.SERVICE_CALL_EXECUTION_FAILURE,
+        AppEngageErrorCode.SERVICE_CALL_INTERNAL,
+        AppEngageErrorCode.SERVICE_CALL_RESOURCE_EXHAUSTED -> true
+        else -> false
+    }
+
+internal fun AppEngagePublishClient.updatePublishStatus(statusCode: Int) {
+    updatePublishStatus(PublishStatusRequest.Builder().setStatusCode(statusCode).build())
+        .addOnSuccessListener {
+            Log.i(TAG, "Successfully updated publish status code to $statusCode")
+        }
+        .addOnFailureListener { exception ->
+            Log.e(TAG, "Failed to update publish status code to $statusCode", exception)
+        }
+}
@@ -41,6 +41,9 @@ class EngageWorker(context: Context, workerParams: WorkerParameters) : Coroutine
     // This is an example of using AppEngagePublishClient.
     private val client = AppEngagePublishClient(context)
     private val clusterRequestFactory = ClusterRequestFactory(context)
+    // [START_EXCLUDE silent]
+    private val publishGate = ClusterPublishGate(SharedPreferencesFingerprintStore(context))
+    // [END_EXCLUDE]
 
     override suspend fun doWork(): Result {
         if (runAttemptCount > Constants.MAX_PUBLISHING_ATTEMPTS) {
@@ -57,6 +60,16 @@ class EngageWorker(context: Context, workerParams: WorkerParameters) : Coroutine
             Constants.PUBLISH_TYPE_USER_ACCOUNT_MANAGEMENT -> ClusterType.TYPE_ENGAGEMENT
             else -> ClusterType.TYPE_UNKNOWN
         }
+        // [START_EXCLUDE silent]
+
+        // Skip the availability check, the publish call and the status update when the content
+        // is identical to what was recently published.
+        val fingerprint = clusterRequestFactory.fingerprintFor(publishType, isAccountSignedIn())
+        if (fingerprint != null && !publishGate.shouldPublish(intendedClusterType, fingerprint)) {
+            Log.i(TAG, "Content for $publishType unchanged, skipping publish")
+            return Result.success()
+        }
+        // [END_EXCLUDE]
 
         if (intendedClusterType != ClusterType.TYPE_UNKNOWN) {
             val request = ServiceAvailabilityRequest.Builder()
@@ -75,6 +88,13 @@ class EngageWorker(context: Context, workerParams: WorkerParameters) : Coroutine
             Constants.PUBLISH_TYPE_USER_ACCOUNT_MANAGEMENT -> publishUserAccountManagement()
             else -> Result.failure()
         }
+            // [START_EXCLUDE silent]
+            .also { result ->
+                if (result is Result.Success && fingerprint != null) {
+                    publishGate.onPublished(intendedClusterType, fingerprint)
+                }
+            }
+            // [END_EXCLUDE]
     }
 
     // Use similar patterns for other clusters (Featured, Continuation, FoodShoppingList, Reservation etc.)
@@ -128,7 +148,7 @@ class EngageWorker(context: Context, workerParams: WorkerParameters) : Coroutine
     private fun isAccountSignedIn(): Boolean {
         // Implement your app's sign-in check logic here.
         // [START_EXCLUDE]
-        return true
+        return isEngageAccountSignedIn()
         // [END_EXCLUDE]
     }
 
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.preload
+
+import kotlin.math.abs
+import kotlin.math.roundToInt
+import kotlin.math.sign
+
+/**
+ * How far an item should be preloaded. Mirrors the stages of
+ * `DefaultPreloadManager.PreloadStatus`, but has no Android dependencies so that the policy
+ * can be simulated on the JVM.
+ */
+sealed interface PreloadTarget {
+    data class RangeLoaded(val durationMs: Long) : PreloadTarget
+    object TracksSelected : PreloadTarget
+    object SourcePrepared : PreloadTarget
+    object NotPreloaded : PreloadTarget
+}
+
+/**
+ * A preload window that adapts to how the user is scrolling.
+ *
+ * The window extends further ahead of the scroll direction than behind it, and widens as the
+ * scroll speed increases. Faster scrolling also shortens how much of each item is buffered,
+ * since users who are flinging only see the first frames of each item. Under memory pressure
+ * the window and the buffered range shrink until the pressure has not been reported for
+ * [memoryPressureHoldMs].
+ *
+ * Items are preloaded at most [maxWindow] items away from the current one, on either side since
+ * the scroll direction can flip. The default matches the window of
+ * [IncrementalPreloadCoordinator], which must cover every item that can be preloaded.
+ */
+class AdaptivePreloadPolicy(
+    private val baseRangeMs: Long = 3000L,
+    private val minRangeMs: Long = 500L,
+    private val baseWindow: Int = 2,
+    private val maxWindow: Int = 4,
+    private val referenceVelocity: Float = 4f,
+    private val memoryPressureHoldMs: Long = 30_000L,
+) {
+    private var currentIndex = 0
+    private var direction = 1
+    private var velocity = 0f
+    private var lastChangeMs = -1L
+    private var severeMemoryPressure = false
+    private var memoryPressureAtMs = Long.MIN_VALUE
+
+    init {
+        require(baseWindow in 2..maxWindow) { "baseWindow must be at least 2 and at most maxWindow" }
+    }
+
+    /**
+     * Records that the item at [index] is now playing, updating the scroll direction and the
+     * smoothed scroll velocity in items per second.
+     */
+    @Synchronized
+    fun onIndexChanged(index: Int, nowMs: Long) {
+        val delta = index - currentIndex
+        if (delta != 0) {
+            direction = delta.sign
+        }
+        if (lastChangeMs >= 0) {
+            val elapsedMs = (nowMs - lastChangeMs).coerceAtLeast(MIN_FRAME_MS)
+            val instantVelocity = abs(delta) * 1000f / elapsedMs
+            // A long pause means the previous fling is over, so don't carry it forward.
+            velocity = if (elapsedMs > PAUSE_MS) {
+                instantVelocity
+            } else {
+                velocity + (instantVelocity - velocity) * VELOCITY_SMOOTHING
+            }
+        }
+        currentIndex = index
+        lastChangeMs = nowMs
+    }
+
+    /**
+     * Records memory pressure reported through `onTrimMemory`.
+     */
+    @Synchronized
+    fun onMemoryPressure(severe: Boolean, nowMs: Long) {
+        severeMemoryPressure = severe || (severeMemoryPressure && underMemoryPressure(nowMs))
+        memoryPressureAtMs = nowMs
+    }
+
+    /**
+     * The target for the item at [index], with memory pressure that is older than
+     * [memoryPressureHoldMs] at [nowMs] ignored.
+     */
+    @Synchronized
+    fun targetFor(index: Int, nowMs: Long): PreloadTarget {
+        // Positive offsets are ahead of the scroll direction, negative ones are behind it.
+        val offset = (index - currentIndex) * direction
+        val speed = (velocity / referenceVelocity).coerceIn(0f, 1f)
+        val fast = speed >= 0.5f
+
+        var ahead = baseWindow + ((maxWindow - baseWindow) * speed).roundToInt()
+        var behind = if (fast) 1 else 2
+        var rangeAhead = if (fast) 2 else 1
+        var rangeMs = baseRangeMs - ((baseRangeMs - minRangeMs) * speed).toLong()
+        if (underMemoryPressure(nowMs)) {
+            val divisor = if (severeMemoryPressure) 4 else 2
+            ahead = (ahead / divisor).coerceAtLeast(1)
+            behind = if (severeMemoryPressure) 0 else 1
+            rangeAhead = 1
+            rangeMs = (rangeMs / divisor).coerceAtLeast(minRangeMs)
+        }
+
+        return when {
+            offset == 0 -> PreloadTarget.SourcePrepared
+            offset in 1..rangeAhead -> PreloadTarget.RangeLoaded(rangeMs)
+            offset == rangeAhead + 1 && offset <= ahead -> PreloadTarget.TracksSelected
+            offset in 1..ahead -> PreloadTarget.SourcePrepared
+            offset == -1 && behind > 0 && !fast -> PreloadTarget.RangeLoaded(rangeMs)
+            offset == -1 && behind > 0 -> PreloadTarget.TracksSelected
+            offset < 0 && -offset <= behind -> PreloadTarget.SourcePrepared
+            else -> PreloadTarget.NotPreloaded
+        }
+    }
+
+    private fun underMemoryPressure(nowMs: Long): Boolean =
+        memoryPressureAtMs != Long.MIN_VALUE && nowMs - memoryPressureAtMs < memoryPressureHoldMs
+
+    private companion object {
+        const val MIN_FRAME_MS = 16L
+        const val PAUSE_MS = 2000L
+        const val VELOCITY_SMOOTHING = 0.5f
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.preload
+
+import android.content.ComponentCallbacks2
+import android.os.SystemClock
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.source.preload.DefaultPreloadManager
+import androidx.media3.exoplayer.source.preload.TargetPreloadStatusControl
+
+/**
+ * A [TargetPreloadStatusControl] backed by [AdaptivePreloadPolicy].
+ *
+ * Call [setCurrentPlayingIndex] alongside `DefaultPreloadManager.setCurrentPlayingIndex`, and
+ * forward `onTrimMemory` to [onTrimMemory]. Both should be followed by
+ * `DefaultPreloadManager.invalidate()` so the new window takes effect.
+ */
+@UnstableApi
+class AdaptiveTargetPreloadStatusControl(
+    private val policy: AdaptivePreloadPolicy = AdaptivePreloadPolicy()
+) : TargetPreloadStatusControl<Int, DefaultPreloadManager.PreloadStatus> {
+
+    fun setCurrentPlayingIndex(index: Int) {
+        policy.onIndexChanged(index, SystemClock.elapsedRealtime())
+    }
+
+    @Suppress("DEPRECATION")
+    fun onTrimMemory(level: Int) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            val severe = level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+            policy.onMemoryPressure(severe, SystemClock.elapsedRealtime())
+        }
+    }
+
+    override fun getTargetPreloadStatus(index: Int): DefaultPreloadManager.PreloadStatus =
+        when (val target = policy.targetFor(index, SystemClock.elapsedRealtime())) {
+            is PreloadTarget.RangeLoaded ->
+                DefaultPreloadManager.PreloadStatus.specifiedRangeLoaded(target.durationMs)
+            PreloadTarget.TracksSelected ->
+                DefaultPreloadManager.PreloadStatus.PRELOAD_STATUS_TRACKS_SELECTED
+            PreloadTarget.SourcePrepared ->
+                DefaultPreloadManager.PreloadStatus.PRELOAD_STATUS_SOURCE_PREPARED
+            PreloadTarget.NotPreloaded ->
+                DefaultPreloadManager.PreloadStatus.PRELOAD_STATUS_NOT_PRELOADED
+        }
+}
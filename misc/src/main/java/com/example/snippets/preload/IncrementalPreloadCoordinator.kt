@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.preload
+
+import androidx.annotation.OptIn
+import androidx.media3.common.MediaItem
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.exoplayer.source.preload.DefaultPreloadManager
+
+/**
+ * The subset of `DefaultPreloadManager` that [IncrementalPreloadCoordinator] drives.
+ */
+interface PreloadSink<T> {
+    fun add(item: T, rankingData: Int)
+    fun remove(item: T)
+    fun setCurrentPlayingIndex(index: Int)
+    fun invalidate()
+}
+
+@OptIn(UnstableApi::class)
+class DefaultPreloadManagerSink(
+    private val preloadManager: DefaultPreloadManager
+) : PreloadSink<MediaItem> {
+    override fun add(item: MediaItem, rankingData: Int) = preloadManager.add(item, rankingData)
+    override fun remove(item: MediaItem) {
+        preloadManager.remove(item)
+    }
+    override fun setCurrentPlayingIndex(index: Int) = preloadManager.setCurrentPlayingIndex(index)
+    override fun invalidate() = preloadManager.invalidate()
+}
+
+/**
+ * Keeps only the items around the current index registered with the preload manager, so that
+ * `invalidate()` recomputes a window of items rather than the whole feed.
+ *
+ * Adding every item of a large feed and calling `invalidate()` on each swipe costs O(feed size)
+ * per swipe. Instead, on each index change only the items entering the window are added and
+ * the items leaving it are removed, since every item outside the window would resolve to
+ * `PRELOAD_STATUS_NOT_PRELOADED` anyway. The window must therefore cover every offset that the
+ * `TargetPreloadStatusControl` in use can preload. The default window covers both
+ * `MyTargetPreloadStatusControl` and the default [AdaptivePreloadPolicy].
+ *
+ * Index changes are batched: [onIndexChanged] only records the latest index and asks
+ * [scheduleFlush] to run [flush] later, so a fling over many items results in a single update.
+ * On Android, [scheduleFlush] would typically post to a `Handler`, or to `Choreographer` to
+ * flush once per frame.
+ */
+class IncrementalPreloadCoordinator<T>(
+    private val sink: PreloadSink<T>,
+    private val windowBehind: Int = 4,
+    private val windowAhead: Int = 4,
+    private val scheduleFlush: (Runnable) -> Unit = { it.run() },
+) {
+    private val items = ArrayList<T>()
+    private var activeRange = IntRange.EMPTY
+    private var currentIndex = 0
+    private var pendingIndex: Int? = null
+    private var flushScheduled = false
+    private val flushRunnable = Runnable { flush() }
+
+    val registeredCount: Int get() = if (activeRange.isEmpty()) 0 else activeRange.last - activeRange.first + 1
+
+    /**
+     * Appends [newItems] to the feed. Only the ones that fall inside the current window are
+     * registered with the preload manager.
+     */
+    fun addItems(newItems: List<T>) {
+        val firstNewIndex = items.size
+        items.addAll(newItems)
+        val window = windowFor(currentIndex)
+        val lastNewIndex = items.lastIndex
+        if (window.last >= firstNewIndex) {
+            for (index in maxOf(firstNewIndex, window.first)..minOf(lastNewIndex, window.last)) {
+                sink.add(items[index], index)
+            }
+            activeRange = window
+            sink.invalidate()
+        }
+    }
+
+    fun onIndexChanged(index: Int) {
+        pendingIndex = index
+        if (!flushScheduled) {
+            flushScheduled = true
+            scheduleFlush(flushRunnable)
+        }
+    }
+
+    /**
+     * Applies the most recent index passed to [onIndexChanged], if any.
+     */
+    fun flush() {
+        flushScheduled = false
+        val index = pendingIndex ?: return
+        pendingIndex = null
+        if (index == currentIndex && !activeRange.isEmpty()) return
+
+        val oldRange = activeRange
+        val newRange = windowFor(index)
+        for (i in oldRange) {
+            if (i !in newRange) sink.remove(items[i])
+        }
+        for (i in newRange) {
+            if (i !in oldRange) sink.add(items[i], i)
+        }
+        activeRange = newRange
+        currentIndex = index
+        sink.setCurrentPlayingIndex(index)
+        sink.invalidate()
+    }
+
+    private fun windowFor(index: Int): IntRange {
+        if (items.isEmpty()) return IntRange.EMPTY
+        val first = (index - windowBehind).coerceAtLeast(0)
+        val last = (index + windowAhead).coerceAtMost(items.lastIndex)
+        return if (first > last) IntRange.EMPTY else first..last
+    }
+}
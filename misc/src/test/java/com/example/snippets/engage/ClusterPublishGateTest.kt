@@ -0,0 +1,150 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.engage
+
+import android.app.Application
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.work.ListenableWorker
+import androidx.work.testing.TestListenableWorkerBuilder
+import androidx.work.workDataOf
+import com.google.android.engage.common.datamodel.ClusterType
+import com.google.android.engage.service.AppEngagePublishClient
+import com.google.android.engage.service.Intents
+import com.google.android.gms.tasks.Tasks
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mockConstruction
+import org.mockito.kotlin.any
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+// Runs the real EngageWorker, with the AppEngagePublishClient it creates replaced by a mock.
+@RunWith(RobolectricTestRunner::class)
+@Config(application = Application::class)
+class ClusterPublishGateTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val store = SharedPreferencesFingerprintStore(context)
+    private val defaultLocale = Locale.getDefault()
+
+    @After
+    fun tearDown() {
+        Locale.setDefault(defaultLocale)
+    }
+
+    private fun runWorker(failPublish: Boolean = false): Pair<ListenableWorker.Result, AppEngagePublishClient> {
+        mockConstruction(AppEngagePublishClient::class.java) { client, _ ->
+            whenever(client.isServiceAvailable(any()))
+                .thenReturn(Tasks.forResult(mapOf(ClusterType.TYPE_CONTINUATION to true)))
+            whenever(client.deleteContinuationCluster()).thenReturn(
+                if (failPublish) Tasks.forException(RuntimeException("publish failed")) else Tasks.forResult(null)
+            )
+            whenever(client.updatePublishStatus(any())).thenReturn(Tasks.forResult(null))
+        }.use { construction ->
+            val worker = TestListenableWorkerBuilder<EngageWorker>(context)
+                .setInputData(workDataOf(Constants.PUBLISH_TYPE_KEY to Constants.PUBLISH_TYPE_CONTINUATION))
+                .build()
+            val result = runBlocking { worker.doWork() }
+            return result to construction.constructed().single()
+        }
+    }
+
+    @Test
+    fun unchangedContent_isPublishedOnce() {
+        val (first, firstClient) = runWorker()
+        val (second, secondClient) = runWorker()
+
+        assertEquals(ListenableWorker.Result.success(), first)
+        assertEquals(ListenableWorker.Result.success(), second)
+        verify(firstClient, times(1)).deleteContinuationCluster()
+        verify(secondClient, never()).isServiceAvailable(any())
+        verify(secondClient, never()).deleteContinuationCluster()
+        verify(secondClient, never()).updatePublishStatus(any())
+    }
+
+    @Test
+    fun changedContent_isRepublished() {
+        Locale.setDefault(Locale.US)
+        runWorker()
+        Locale.setDefault(Locale.FRANCE)
+        val (_, client) = runWorker()
+
+        verify(client, times(1)).deleteContinuationCluster()
+    }
+
+    @Test
+    fun failedPublish_isRetriedOnNextRun() {
+        runWorker(failPublish = true)
+        val (_, client) = runWorker()
+
+        verify(client, times(1)).deleteContinuationCluster()
+    }
+
+    // Moves the last publish back by [hours], as if the next run happened that much later.
+    private fun agePublish(hours: Long) {
+        val published = store.get(ClusterType.TYPE_CONTINUATION)!!
+        store.put(
+            ClusterType.TYPE_CONTINUATION,
+            published.copy(publishedAtMillis = published.publishedAtMillis - TimeUnit.HOURS.toMillis(hours)),
+        )
+    }
+
+    @Test
+    fun periodicRunsWithUnchangedContent_publishOnce() {
+        val (_, firstClient) = runWorker()
+        agePublish(Constants.REPEAT_INTERVAL)
+        val (_, secondClient) = runWorker()
+
+        verify(firstClient, times(1)).deleteContinuationCluster()
+        verify(secondClient, never()).deleteContinuationCluster()
+    }
+
+    @Test
+    fun oldPublish_isRepeatedWithUnchangedContent() {
+        runWorker()
+        agePublish(3 * Constants.REPEAT_INTERVAL)
+        val (_, client) = runWorker()
+
+        verify(client, times(1)).deleteContinuationCluster()
+    }
+
+    @Test
+    fun publishRequestedByTheService_isNotSkipped() {
+        runWorker()
+        forgetPublishedCluster(context, Intents.ACTION_PUBLISH_CONTINUATION)
+        val (_, client) = runWorker()
+
+        verify(client, times(1)).deleteContinuationCluster()
+    }
+
+    @Test
+    fun fingerprint_dependsOnExtras() {
+        val items = listOf(AppData())
+        assertEquals(fingerprintOf(items, "en-US"), fingerprintOf(items, "en-US"))
+        assertNotEquals(fingerprintOf(items, "en-US"), fingerprintOf(items, "fr-FR"))
+    }
+}
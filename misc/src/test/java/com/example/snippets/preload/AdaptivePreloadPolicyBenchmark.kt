@@ -0,0 +1,185 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.preload
+
+import kotlin.math.abs
+import kotlin.random.Random
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Replays synthetic scroll traces against the fixed window from
+ * `MyTargetPreloadStatusControl` and against [AdaptivePreloadPolicy], and reports the hit rate
+ * (items that could start playing immediately) against the bytes preloaded.
+ */
+class AdaptivePreloadPolicyBenchmark {
+
+    private data class Step(val index: Int, val dwellMs: Long, val trimMemory: Boolean = false)
+
+    private data class Report(val hits: Int, val views: Int, val bytes: Long) {
+        val hitRate: Double get() = hits.toDouble() / views
+        override fun toString() = "hit rate %.2f, %.1f MB preloaded".format(hitRate, bytes / 1e6)
+    }
+
+    private interface Policy {
+        fun onIndexChanged(index: Int, nowMs: Long)
+        fun onTrimMemory(nowMs: Long)
+        fun targetFor(index: Int, nowMs: Long): PreloadTarget
+    }
+
+    // The fixed window used by MyTargetPreloadStatusControl.
+    private class FixedPolicy : Policy {
+        private var current = 0
+        override fun onIndexChanged(index: Int, nowMs: Long) {
+            current = index
+        }
+        override fun onTrimMemory(nowMs: Long) = Unit
+        override fun targetFor(index: Int, nowMs: Long): PreloadTarget {
+            val distance = abs(index - current)
+            return when {
+                distance == 1 -> PreloadTarget.RangeLoaded(3000L)
+                distance == 2 -> PreloadTarget.TracksSelected
+                distance <= 4 -> PreloadTarget.SourcePrepared
+                else -> PreloadTarget.NotPreloaded
+            }
+        }
+    }
+
+    private class Adaptive(private val policy: AdaptivePreloadPolicy = AdaptivePreloadPolicy()) : Policy {
+        override fun onIndexChanged(index: Int, nowMs: Long) = policy.onIndexChanged(index, nowMs)
+        override fun onTrimMemory(nowMs: Long) = policy.onMemoryPressure(severe = false, nowMs)
+        override fun targetFor(index: Int, nowMs: Long) = policy.targetFor(index, nowMs)
+    }
+
+    /**
+     * Downloads at [BYTES_PER_MS] while the user dwells on each item, filling the targets
+     * nearest to the current item first. An item is a hit if at least [FIRST_FRAME_BYTES] of it
+     * were buffered by the time it became current.
+     */
+    private fun replay(trace: List<Step>, policy: Policy): Report {
+        val loaded = HashMap<Int, Long>()
+        var nowMs = 0L
+        var hits = 0
+        var bytes = 0L
+        for (step in trace) {
+            if ((loaded[step.index] ?: 0L) >= FIRST_FRAME_BYTES) hits++
+            if (step.trimMemory) policy.onTrimMemory(nowMs)
+            policy.onIndexChanged(step.index, nowMs)
+
+            var budget = step.dwellMs * BYTES_PER_MS
+            for (distance in 1..MAX_DISTANCE) {
+                for (index in intArrayOf(step.index + distance, step.index - distance)) {
+                    if (index < 0 || budget <= 0) continue
+                    val wanted = bytesFor(policy.targetFor(index, nowMs))
+                    val have = loaded[index] ?: 0L
+                    if (wanted > have) {
+                        val fetched = minOf(wanted - have, budget)
+                        loaded[index] = have + fetched
+                        budget -= fetched
+                        bytes += fetched
+                    }
+                }
+            }
+            nowMs += step.dwellMs
+        }
+        return Report(hits, trace.size, bytes)
+    }
+
+    private fun bytesFor(target: PreloadTarget): Long = when (target) {
+        is PreloadTarget.RangeLoaded -> HEADER_BYTES + target.durationMs * MEDIA_BYTES_PER_MS
+        PreloadTarget.TracksSelected -> HEADER_BYTES
+        PreloadTarget.SourcePrepared -> MANIFEST_BYTES
+        PreloadTarget.NotPreloaded -> 0L
+    }
+
+    private fun trace(random: Random, length: Int, flingProbability: Double, backProbability: Double): List<Step> {
+        val steps = mutableListOf<Step>()
+        var index = 0
+        var flingRemaining = 0
+        var direction = 1
+        while (steps.size < length) {
+            if (flingRemaining == 0 && random.nextDouble() < flingProbability) {
+                flingRemaining = random.nextInt(5, 15)
+                direction = if (random.nextDouble() < backProbability) -1 else 1
+            }
+            val dwellMs = if (flingRemaining > 0) {
+                flingRemaining--
+                random.nextLong(80, 250)
+            } else {
+                direction = if (random.nextDouble() < backProbability) -1 else 1
+                random.nextLong(2000, 10_000)
+            }
+            index = (index + direction).coerceAtLeast(0)
+            steps += Step(index, dwellMs, trimMemory = random.nextDouble() < 0.01)
+        }
+        return steps
+    }
+
+    @Test
+    fun compareFixedAndAdaptiveWindows() {
+        val traces = mapOf(
+            "browsing" to trace(Random(1), 2_000, flingProbability = 0.02, backProbability = 0.1),
+            "flinging" to trace(Random(2), 2_000, flingProbability = 0.3, backProbability = 0.1),
+            "back and forth" to trace(Random(3), 2_000, flingProbability = 0.1, backProbability = 0.4),
+        )
+        for ((name, trace) in traces) {
+            val fixed = replay(trace, FixedPolicy())
+            val adaptive = replay(trace, Adaptive())
+            println("$name: fixed $fixed; adaptive $adaptive")
+            assertTrue(
+                "adaptive hit rate regressed on $name",
+                adaptive.hitRate >= fixed.hitRate - 0.02,
+            )
+        }
+    }
+
+    @Test
+    fun memoryPressureExpiresWithoutFurtherUpdates() {
+        val policy = AdaptivePreloadPolicy(memoryPressureHoldMs = 30_000L)
+        policy.onIndexChanged(0, nowMs = 0)
+        policy.onMemoryPressure(severe = true, nowMs = 0)
+
+        assertEquals(PreloadTarget.NotPreloaded, policy.targetFor(-1, nowMs = 29_999))
+        assertEquals(PreloadTarget.RangeLoaded(3000L), policy.targetFor(-1, nowMs = 30_000))
+    }
+
+    @Test
+    fun preloadedItemsStayInsideTheCoordinatorWindow() {
+        val policy = AdaptivePreloadPolicy()
+        // Fling backwards at full speed, then forwards.
+        for ((step, index) in ((20 downTo 0) + (1..20)).withIndex()) {
+            policy.onIndexChanged(index, nowMs = step * 100L)
+            for (offset in -10..10) {
+                if (policy.targetFor(index + offset, step * 100L) != PreloadTarget.NotPreloaded) {
+                    assertTrue("offset $offset is outside the window", abs(offset) <= COORDINATOR_WINDOW)
+                }
+            }
+        }
+    }
+
+    private companion object {
+        // The default windowAhead and windowBehind of IncrementalPreloadCoordinator.
+        const val COORDINATOR_WINDOW = 4
+        const val BYTES_PER_MS = 1_000L // ~8 Mbps
+        const val MEDIA_BYTES_PER_MS = 250L // ~2 Mbps stream
+        const val HEADER_BYTES = 64_000L
+        const val MANIFEST_BYTES = 8_000L
+        const val FIRST_FRAME_BYTES = HEADER_BYTES + 300 * MEDIA_BYTES_PER_MS
+        const val MAX_DISTANCE = 10
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.preload
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Compares the per-swipe cost of registering the whole feed and calling `invalidate()` on every
+ * swipe against [IncrementalPreloadCoordinator], for growing feed sizes.
+ */
+class IncrementalPreloadCoordinatorBenchmark {
+
+    // Counts the status computations a preload manager would do: one per registered item on
+    // every invalidate(), plus one per add or remove.
+    private class CountingSink : PreloadSink<Int> {
+        val registered = HashSet<Int>()
+        var work = 0L
+        var invalidations = 0
+
+        override fun add(item: Int, rankingData: Int) {
+            registered += item
+            work++
+        }
+        override fun remove(item: Int) {
+            registered -= item
+            work++
+        }
+        override fun setCurrentPlayingIndex(index: Int) = Unit
+        override fun invalidate() {
+            invalidations++
+            work += registered.size
+        }
+    }
+
+    private fun naiveWorkPerSwipe(feedSize: Int, swipes: Int): Double {
+        val sink = CountingSink()
+        for (i in 0 until feedSize) sink.add(i, i)
+        sink.invalidate()
+        sink.work = 0
+        for (i in 1..swipes) {
+            sink.setCurrentPlayingIndex(i)
+            sink.invalidate()
+        }
+        return sink.work.toDouble() / swipes
+    }
+
+    private fun incrementalWorkPerSwipe(feedSize: Int, swipes: Int): Double {
+        val sink = CountingSink()
+        val coordinator = IncrementalPreloadCoordinator(sink)
+        coordinator.addItems((0 until feedSize).toList())
+        sink.work = 0
+        for (i in 1..swipes) {
+            coordinator.onIndexChanged(i)
+        }
+        return sink.work.toDouble() / swipes
+    }
+
+    @Test
+    fun perSwipeCostStaysFlatAsFeedGrows() {
+        val swipes = 500
+        val results = listOf(1_000, 10_000, 100_000).map { feedSize ->
+            val naive = naiveWorkPerSwipe(feedSize, swipes)
+            val incremental = incrementalWorkPerSwipe(feedSize, swipes)
+            println("feed $feedSize: full invalidate $naive, incremental $incremental per swipe")
+            incremental
+        }
+        assertEquals(results.first(), results.last(), 0.0)
+    }
+
+    @Test
+    fun flingIsBatchedIntoOneUpdate() {
+        val sink = CountingSink()
+        val pending = ArrayList<Runnable>()
+        val coordinator = IncrementalPreloadCoordinator(sink, scheduleFlush = { pending += it })
+        coordinator.addItems((0 until 1_000).toList())
+        val invalidationsBefore = sink.invalidations
+
+        for (i in 1..30) coordinator.onIndexChanged(i)
+        pending.forEach { it.run() }
+
+        assertEquals(1, pending.size)
+        assertEquals(invalidationsBefore + 1, sink.invalidations)
+        assertTrue(sink.registered.containsAll((26..34).toList()))
+        assertEquals(9, sink.registered.size)
+    }
+}
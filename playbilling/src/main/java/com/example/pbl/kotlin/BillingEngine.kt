@@ -0,0 +1,330 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.pbl.kotlin
+
+import com.android.billingclient.api.AcknowledgePurchaseParams
+import com.android.billingclient.api.BillingClient
+import com.android.billingclient.api.BillingClient.BillingResponseCode
+import com.android.billingclient.api.BillingClientStateListener
+import com.android.billingclient.api.BillingResult
+import com.android.billingclient.api.ConsumeParams
+import com.android.billingclient.api.ProductDetails
+import com.android.billingclient.api.Purchase
+import com.android.billingclient.api.QueryProductDetailsParams
+import com.android.billingclient.api.QueryProductDetailsParams.Product
+import com.android.billingclient.api.QueryPurchasesParams
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.resume
+import kotlin.random.Random
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
+
+class BillingException(val billingResult: BillingResult) :
+    Exception("Billing call failed -- Response Code: ${billingResult.responseCode} -- " +
+        "Debug Message: ${billingResult.debugMessage}") {
+
+    /** Whether the call failed with a transient error, so that it can be retried later. */
+    val isRetryable: Boolean get() = billingResult.responseCode in RETRYABLE_RESPONSE_CODES
+}
+
+private val RETRYABLE_RESPONSE_CODES = setOf(
+    BillingResponseCode.ERROR,
+    BillingResponseCode.NETWORK_ERROR,
+    BillingResponseCode.SERVICE_DISCONNECTED,
+    BillingResponseCode.SERVICE_UNAVAILABLE,
+)
+
+/**
+ * The calls of [BillingClient] that [BillingEngine] makes, with plain callbacks. Use
+ * [asBillingService] for a real client; tests can implement it to simulate Google Play.
+ */
+interface BillingService {
+    fun startConnection(listener: BillingClientStateListener)
+    fun endConnection()
+    fun queryPurchases(productType: String, callback: (BillingResult, List<Purchase>) -> Unit)
+    fun queryProductDetails(
+        productType: String,
+        productIds: List<String>,
+        callback: (BillingResult, List<ProductDetails>) -> Unit,
+    )
+    fun acknowledge(purchaseToken: String, callback: (BillingResult) -> Unit)
+    fun consume(purchaseToken: String, callback: (BillingResult) -> Unit)
+}
+
+fun BillingClient.asBillingService(): BillingService = object : BillingService {
+    override fun startConnection(listener: BillingClientStateListener) =
+        this@asBillingService.startConnection(listener)
+
+    override fun endConnection() = this@asBillingService.endConnection()
+
+    override fun queryPurchases(
+        productType: String,
+        callback: (BillingResult, List<Purchase>) -> Unit,
+    ) = queryPurchasesAsync(QueryPurchasesParams.newBuilder().setProductType(productType).build()) {
+            billingResult, purchases ->
+        callback(billingResult, purchases)
+    }
+
+    override fun queryProductDetails(
+        productType: String,
+        productIds: List<String>,
+        callback: (BillingResult, List<ProductDetails>) -> Unit,
+    ) = queryProductDetailsAsync(
+        QueryProductDetailsParams.newBuilder()
+            .setProductList(
+                productIds.map { Product.newBuilder().setProductId(it).setProductType(productType).build() }
+            )
+            .build()
+    ) { billingResult, queryProductDetailsResult ->
+        callback(billingResult, queryProductDetailsResult.productDetailsList)
+    }
+
+    override fun acknowledge(purchaseToken: String, callback: (BillingResult) -> Unit) =
+        acknowledgePurchase(AcknowledgePurchaseParams.newBuilder().setPurchaseToken(purchaseToken).build()) {
+            callback(it)
+        }
+
+    override fun consume(purchaseToken: String, callback: (BillingResult) -> Unit) =
+        consumeAsync(ConsumeParams.newBuilder().setPurchaseToken(purchaseToken).build()) { billingResult, _ ->
+            callback(billingResult)
+        }
+}
+
+/**
+ * Exponential backoff with full jitter: the delay before attempt `n + 1` is a random duration
+ * up to [initialDelayMs] * 2^(n - 1), capped at [maxDelayMs], so that clients that lost their
+ * connection at the same time don't all retry at the same time.
+ */
+class BillingBackoff(
+    private val initialDelayMs: Long = 500L,
+    private val maxDelayMs: Long = 30_000L,
+    private val random: Random = Random.Default,
+) {
+    fun delayFor(attempt: Int): Long {
+        val ceiling = (initialDelayMs shl (attempt - 1).coerceIn(0, 30)).coerceAtMost(maxDelayMs)
+        return random.nextLong(ceiling + 1)
+    }
+}
+
+/**
+ * A suspending facade over one shared billing connection.
+ *
+ * - Calls made while disconnected wait for the connection, which is (re)established on demand
+ *   by a single coroutine. Calls that fail because the service disconnected are replayed once
+ *   the connection is back.
+ * - Calls that fail with a transient error are retried after a [backoff] delay, up to
+ *   [maxAttempts] attempts in total. Reconnection uses the same [backoff] and the same limit:
+ *   the calls waiting for the connection fail once it failed with a non-retryable error or
+ *   [maxAttempts] times in a row. The next call waits for the backoff delay before connecting
+ *   again, instead of reconnecting right away.
+ * - Identical [queryPurchases] and [queryProductDetails] calls that are in flight at the same
+ *   time share a single request to Google Play.
+ *
+ * Requests run in [scope], so a caller that is cancelled doesn't cancel a request that other
+ * callers are waiting for. After [close], waiting and new calls fail with
+ * [BillingResponseCode.DEVELOPER_ERROR].
+ */
+class BillingEngine(
+    private val service: BillingService,
+    private val scope: CoroutineScope,
+    private val backoff: BillingBackoff = BillingBackoff(),
+    private val maxAttempts: Int = 8,
+) {
+    sealed interface ConnectionState {
+        data object Disconnected : ConnectionState
+        data object Connecting : ConnectionState
+        data object Connected : ConnectionState
+        class Failed(val billingResult: BillingResult) : ConnectionState
+        data object Closed : ConnectionState
+    }
+
+    private data class PurchasesRequest(val productType: String)
+    private data class ProductDetailsRequest(val productType: String, val productIds: Set<String>)
+
+    private val state = MutableStateFlow<ConnectionState>(ConnectionState.Disconnected)
+    private var connectionJob: Job? = null
+    private val inFlight = ConcurrentHashMap<Any, Deferred<Result<*>>>()
+    private val requestCount = AtomicInteger()
+    private val connectionCount = AtomicInteger()
+    private val failedConnections = AtomicInteger()
+
+    val connectionState: StateFlow<ConnectionState> = state.asStateFlow()
+
+    /** The number of requests sent to Google Play, including retries. */
+    val requests: Int get() = requestCount.get()
+
+    /** The number of times a connection was established. */
+    val connections: Int get() = connectionCount.get()
+
+    suspend fun queryPurchases(productType: String): List<Purchase> =
+        shared(PurchasesRequest(productType)) {
+            call { callback -> service.queryPurchases(productType, callback) }
+        }
+
+    suspend fun queryProductDetails(
+        productType: String,
+        productIds: Collection<String>,
+    ): List<ProductDetails> {
+        val ids = productIds.toSortedSet()
+        return shared(ProductDetailsRequest(productType, ids)) {
+            call { callback -> service.queryProductDetails(productType, ids.toList(), callback) }
+        }
+    }
+
+    suspend fun acknowledge(purchaseToken: String) {
+        call<Unit> { callback -> service.acknowledge(purchaseToken) { callback(it, Unit) } }
+    }
+
+    suspend fun consume(purchaseToken: String) {
+        call<Unit> { callback -> service.consume(purchaseToken) { callback(it, Unit) } }
+    }
+
+    /** A [ProductDetailsQuery] for [ProductCatalog] that goes through this engine. */
+    fun productDetailsQuery() = ProductDetailsQuery { productType, productIds ->
+        queryProductDetails(productType, productIds)
+    }
+
+    fun close() {
+        synchronized(state) {
+            connectionJob?.cancel()
+            state.value = ConnectionState.Closed
+        }
+        service.endConnection()
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private suspend fun <T> shared(key: Any, block: suspend () -> T): T {
+        val deferred = inFlight.computeIfAbsent(key) {
+            scope.async(start = CoroutineStart.LAZY) { runCatching { block() } }.also { request ->
+                request.invokeOnCompletion { inFlight.remove(key, request) }
+            }
+        }
+        return deferred.await().getOrThrow() as T
+    }
+
+    private suspend fun <T> call(request: (callback: (BillingResult, T) -> Unit) -> Unit): T {
+        var attempt = 1
+        while (true) {
+            awaitConnection()
+            requestCount.incrementAndGet()
+            val (billingResult, value) = suspendCancellableCoroutine { continuation ->
+                request { billingResult, value ->
+                    if (continuation.isActive) continuation.resume(billingResult to value)
+                }
+            }
+            val responseCode = billingResult.responseCode
+            if (responseCode == BillingResponseCode.OK) return value
+            if (responseCode !in RETRYABLE_RESPONSE_CODES || attempt >= maxAttempts) throw BillingException(billingResult)
+            if (responseCode == BillingResponseCode.SERVICE_DISCONNECTED) {
+                // Replayed as soon as the connection is back, which has its own backoff.
+                onDisconnected()
+            } else {
+                delay(backoff.delayFor(attempt))
+            }
+            attempt++
+        }
+    }
+
+    private suspend fun awaitConnection() {
+        synchronized(state) {
+            if (state.value == ConnectionState.Closed) throw BillingException(CLOSED)
+            if (state.value.let { it is ConnectionState.Disconnected || it is ConnectionState.Failed }) {
+                state.value = ConnectionState.Connecting
+                val failures = failedConnections.get()
+                connectionJob = scope.launch {
+                    if (failures > 0) delay(backoff.delayFor(failures))
+                    connect()
+                }
+            }
+        }
+        val ready = state.first { it !is ConnectionState.Connecting && it !is ConnectionState.Disconnected }
+        when (ready) {
+            is ConnectionState.Failed -> throw BillingException(ready.billingResult)
+            ConnectionState.Closed -> throw BillingException(CLOSED)
+            else -> Unit
+        }
+    }
+
+    private suspend fun connect() {
+        var attempt = 1
+        while (true) {
+            val billingResult = suspendCancellableCoroutine { continuation ->
+                service.startConnection(object : BillingClientStateListener {
+                    override fun onBillingSetupFinished(billingResult: BillingResult) {
+                        if (continuation.isActive) continuation.resume(billingResult)
+                    }
+
+                    override fun onBillingServiceDisconnected() {
+                        if (continuation.isActive) {
+                            continuation.resume(DISCONNECTED)
+                        } else {
+                            onDisconnected()
+                        }
+                    }
+                })
+            }
+            val responseCode = billingResult.responseCode
+            when {
+                responseCode == BillingResponseCode.OK -> {
+                    connectionCount.incrementAndGet()
+                    failedConnections.set(0)
+                    setState(ConnectionState.Connected)
+                    return
+                }
+                responseCode !in RETRYABLE_RESPONSE_CODES || attempt >= maxAttempts -> {
+                    failedConnections.incrementAndGet()
+                    setState(ConnectionState.Failed(billingResult))
+                    return
+                }
+            }
+            delay(backoff.delayFor(attempt++))
+        }
+    }
+
+    // Leaves the Closed state alone, for a setup that finished while the engine was closed.
+    private fun setState(newState: ConnectionState) {
+        synchronized(state) {
+            if (state.value != ConnectionState.Closed) state.value = newState
+        }
+    }
+
+    private fun onDisconnected() {
+        state.compareAndSet(ConnectionState.Connected, ConnectionState.Disconnected)
+    }
+
+    private companion object {
+        val DISCONNECTED: BillingResult = BillingResult.newBuilder()
+            .setResponseCode(BillingResponseCode.SERVICE_DISCONNECTED)
+            .setDebugMessage("Service disconnected during connection setup")
+            .build()
+        val CLOSED: BillingResult = BillingResult.newBuilder()
+            .setResponseCode(BillingResponseCode.DEVELOPER_ERROR)
+            .setDebugMessage("BillingEngine is closed")
+            .build()
+    }
+}
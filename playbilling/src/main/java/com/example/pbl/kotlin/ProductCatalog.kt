@@ -0,0 +1,340 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.pbl.kotlin
+
+import android.content.Context
+import android.content.SharedPreferences
+import android.util.Log
+import com.android.billingclient.api.BillingClient
+import com.android.billingclient.api.BillingClient.BillingResponseCode
+import com.android.billingclient.api.BillingResult
+import com.android.billingclient.api.ProductDetails
+import com.android.billingclient.api.QueryProductDetailsParams
+import com.android.billingclient.api.QueryProductDetailsParams.Product
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import org.json.JSONObject
+
+/**
+ * What a store screen shows for a product. Unlike [ProductDetails], which is needed to launch
+ * the billing flow and can only be obtained from Google Play, a listing can be persisted and
+ * shown right away after a process restart.
+ */
+data class ProductListing(
+    val productId: String,
+    val productType: String,
+    val name: String,
+    val title: String,
+    val description: String,
+    val formattedPrice: String?,
+    val fetchedAtMillis: Long,
+) {
+    internal fun toJson(): String = JSONObject()
+        .put("productId", productId)
+        .put("productType", productType)
+        .put("name", name)
+        .put("title", title)
+        .put("description", description)
+        .putOpt("formattedPrice", formattedPrice)
+        .put("fetchedAtMillis", fetchedAtMillis)
+        .toString()
+
+    internal companion object {
+        fun of(details: ProductDetails, fetchedAtMillis: Long) = ProductListing(
+            productId = details.productId,
+            productType = details.productType,
+            name = details.name,
+            title = details.title,
+            description = details.description,
+            formattedPrice = details.oneTimePurchaseOfferDetails?.formattedPrice
+                ?: details.subscriptionOfferDetails?.firstOrNull()
+                    ?.pricingPhases?.pricingPhaseList?.firstOrNull()?.formattedPrice,
+            fetchedAtMillis = fetchedAtMillis,
+        )
+
+        fun fromJson(json: String): ProductListing = JSONObject(json).run {
+            ProductListing(
+                productId = getString("productId"),
+                productType = getString("productType"),
+                name = getString("name"),
+                title = getString("title"),
+                description = getString("description"),
+                formattedPrice = optString("formattedPrice").takeIf { has("formattedPrice") },
+                fetchedAtMillis = getLong("fetchedAtMillis"),
+            )
+        }
+    }
+}
+
+class ProductQueryException(val billingResult: BillingResult) :
+    Exception("Product details query failed -- Response Code: ${billingResult.responseCode} -- " +
+        "Debug Message: ${billingResult.debugMessage}")
+
+/**
+ * Queries the details of products of one type. [ProductCatalog] uses it to split its lookups
+ * into chunks, so that other implementations, such as a fake for tests, can be plugged in.
+ */
+fun interface ProductDetailsQuery {
+    suspend fun query(productType: String, productIds: List<String>): List<ProductDetails>
+}
+
+/**
+ * A [ProductDetailsQuery] that calls `queryProductDetailsAsync` on this client. It doesn't
+ * connect or reconnect the client: the caller must keep it connected, otherwise queries fail
+ * with SERVICE_DISCONNECTED. Prefer [BillingEngine.productDetailsQuery], which does.
+ */
+fun BillingClient.productDetailsQuery() = ProductDetailsQuery { productType, productIds ->
+    val params = QueryProductDetailsParams.newBuilder()
+        .setProductList(
+            productIds.map { Product.newBuilder().setProductId(it).setProductType(productType).build() }
+        )
+        .build()
+    suspendCancellableCoroutine { continuation ->
+        queryProductDetailsAsync(params) { billingResult, queryProductDetailsResult ->
+            if (billingResult.responseCode == BillingResponseCode.OK) {
+                continuation.resume(queryProductDetailsResult.productDetailsList)
+            } else {
+                continuation.resumeWithException(ProductQueryException(billingResult))
+            }
+        }
+    }
+}
+
+/**
+ * A cache of product details, for catalogs of hundreds of products.
+ *
+ * - Lookups are split into chunks of [chunkSize] products, and at most [maxParallelQueries]
+ *   chunks are queried at the same time.
+ * - Products that are already being queried are not queried again: concurrent lookups wait for
+ *   the same query.
+ * - Results are kept for [ttlMillis]. Their [ProductListing] is also persisted in [prefs], so
+ *   that [listings] can be served without a query after a process restart.
+ * - [listings] returns expired listings right away and refreshes them in [scope], so the store
+ *   screen only waits for products it has never seen.
+ *
+ * [ProductDetails] themselves can't be persisted, so [productDetails] queries the products that
+ * weren't fetched by this process, as launching the billing flow requires fresh details anyway.
+ */
+class ProductCatalog(
+    private val query: ProductDetailsQuery,
+    private val prefs: SharedPreferences,
+    private val scope: CoroutineScope,
+    private val ttlMillis: Long = 12 * 60 * 60 * 1000L,
+    private val chunkSize: Int = 20,
+    maxParallelQueries: Int = 4,
+    ioDispatcher: CoroutineDispatcher = Dispatchers.IO,
+    private val clock: () -> Long = System::currentTimeMillis,
+) {
+    private data class Key(val productType: String, val productId: String) {
+        val prefKey get() = "$productType/$productId"
+    }
+
+    private class Entry(val listing: ProductListing, val details: ProductDetails?)
+
+    private val entries = ConcurrentHashMap<Key, Entry>()
+    private val inFlight = HashMap<Key, Deferred<ProductDetails?>>()
+    private val permits = Semaphore(maxParallelQueries)
+    private val queryCount = AtomicInteger()
+
+    private val restored = scope.async(ioDispatcher, start = CoroutineStart.LAZY) {
+        for ((prefKey, json) in prefs.all) {
+            val listing = try {
+                ProductListing.fromJson(json as String)
+            } catch (e: Exception) {
+                Log.w(TAG, "Dropping unreadable listing $prefKey", e)
+                continue
+            }
+            entries.putIfAbsent(Key(listing.productType, listing.productId), Entry(listing, null))
+        }
+    }
+
+    /** The number of `queryProductDetailsAsync` calls made so far. */
+    val queries: Int get() = queryCount.get()
+
+    /**
+     * The details of [productIds], querying only those that weren't fetched by this process in
+     * the last [ttlMillis]. Products that Google Play doesn't know are left out.
+     */
+    suspend fun productDetails(
+        productType: String,
+        productIds: Collection<String>,
+    ): Map<String, ProductDetails> {
+        val now = clock()
+        val result = LinkedHashMap<String, ProductDetails>()
+        val missing = ArrayList<String>()
+        for (productId in productIds.distinct()) {
+            val entry = entries[Key(productType, productId)]
+            if (entry?.details != null && entry.isFresh(now)) {
+                result[productId] = entry.details
+            } else {
+                missing += productId
+            }
+        }
+        for ((productId, details) in fetch(productType, missing)) {
+            if (details != null) result[productId] = details
+        }
+        return result
+    }
+
+    /**
+     * The listings of [productIds]. Listings that are cached, even expired or restored from
+     * disk, are returned without waiting; expired ones are refreshed in the background.
+     */
+    suspend fun listings(
+        productType: String,
+        productIds: Collection<String>,
+    ): Map<String, ProductListing> {
+        restored.await()
+        val now = clock()
+        val cached = HashMap<String, ProductListing>()
+        val stale = ArrayList<String>()
+        val missing = ArrayList<String>()
+        for (productId in productIds.distinct()) {
+            val entry = entries[Key(productType, productId)]
+            when {
+                entry == null -> missing += productId
+                entry.isFresh(now) -> cached[productId] = entry.listing
+                else -> {
+                    cached[productId] = entry.listing
+                    stale += productId
+                }
+            }
+        }
+        if (stale.isNotEmpty()) {
+            scope.launch {
+                try {
+                    fetch(productType, stale)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Log.w(TAG, "Failed to refresh ${stale.size} products", e)
+                }
+            }
+        }
+        val fetched = fetch(productType, missing)
+        return productIds.distinct().mapNotNull { productId ->
+            val listing = cached[productId] ?: fetched[productId]?.let { entries[Key(productType, productId)]?.listing }
+            listing?.let { productId to it }
+        }.toMap()
+    }
+
+    /** Drops the cached products, for example when the catalog changed on the server. */
+    fun clear() {
+        entries.clear()
+        prefs.edit().clear().apply()
+    }
+
+    private fun Entry.isFresh(now: Long) = now - listing.fetchedAtMillis < ttlMillis
+
+    private suspend fun fetch(
+        productType: String,
+        productIds: List<String>,
+    ): Map<String, ProductDetails?> {
+        if (productIds.isEmpty()) return emptyMap()
+        val pending = LinkedHashMap<String, Deferred<ProductDetails?>>()
+        val chunks = ArrayList<Map<String, CompletableDeferred<ProductDetails?>>>()
+        synchronized(inFlight) {
+            val toQuery = ArrayList<String>()
+            for (productId in productIds) {
+                val running = inFlight[Key(productType, productId)]
+                if (running != null) pending[productId] = running else toQuery += productId
+            }
+            for (chunkIds in toQuery.chunked(chunkSize)) {
+                val chunk = chunkIds.associateWith { CompletableDeferred<ProductDetails?>() }
+                for ((productId, deferred) in chunk) {
+                    inFlight[Key(productType, productId)] = deferred
+                    pending[productId] = deferred
+                }
+                chunks += chunk
+            }
+        }
+        for (chunk in chunks) {
+            // The query belongs to the catalog's scope, so it isn't cancelled when the lookup
+            // that started it is, while other lookups might be waiting for it.
+            scope.launch { queryChunk(productType, chunk) }.invokeOnCompletion { cause ->
+                synchronized(inFlight) {
+                    for (productId in chunk.keys) inFlight.remove(Key(productType, productId))
+                }
+                val error = cause ?: IllegalStateException("Query completed without a result")
+                chunk.values.forEach { it.completeExceptionally(error) }
+            }
+        }
+        return pending.mapValues { it.value.await() }
+    }
+
+    private suspend fun queryChunk(
+        productType: String,
+        chunk: Map<String, CompletableDeferred<ProductDetails?>>,
+    ) {
+        val fetched = try {
+            permits.withPermit {
+                queryCount.incrementAndGet()
+                query.query(productType, chunk.keys.toList())
+            }.associateBy { it.productId }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            chunk.values.forEach { it.completeExceptionally(e) }
+            return
+        }
+        val now = clock()
+        val editor = prefs.edit()
+        for ((productId, deferred) in chunk) {
+            val key = Key(productType, productId)
+            val details = fetched[productId]
+            if (details != null) {
+                val listing = ProductListing.of(details, now)
+                entries[key] = Entry(listing, details)
+                editor.putString(key.prefKey, listing.toJson())
+            } else {
+                entries.remove(key)
+                editor.remove(key.prefKey)
+            }
+            deferred.complete(details)
+        }
+        editor.apply()
+    }
+
+    companion object {
+        private const val TAG = "ProductCatalog"
+
+        /**
+         * A catalog that queries through [engine], which connects on demand and retries
+         * transient failures.
+         */
+        fun create(context: Context, engine: BillingEngine, scope: CoroutineScope) = ProductCatalog(
+            query = engine.productDetailsQuery(),
+            prefs = context.getSharedPreferences("product_catalog", Context.MODE_PRIVATE),
+            scope = scope,
+        )
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.pbl.kotlin
+
+import android.content.Context
+import android.util.Log
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.android.billingclient.api.BillingClient
+import com.android.billingclient.api.PendingPurchasesParams
+import com.android.billingclient.api.Purchase
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+
+enum class PurchaseAction { ACKNOWLEDGE, CONSUME }
+
+data class PurchaseWork(val purchaseToken: String, val action: PurchaseAction)
+
+/** The purchase tokens that were already acknowledged or consumed. */
+interface ProcessedPurchaseStore {
+    fun isProcessed(purchaseToken: String): Boolean
+    fun markProcessed(purchaseTokens: Collection<String>)
+
+    /** Forgets the tokens that are not in [purchaseTokens]. */
+    fun retainOnly(purchaseTokens: Set<String>)
+}
+
+class SharedPreferencesProcessedPurchaseStore(context: Context) : ProcessedPurchaseStore {
+    private val prefs = context.applicationContext
+        .getSharedPreferences("processed_purchases", Context.MODE_PRIVATE)
+
+    override fun isProcessed(purchaseToken: String): Boolean = prefs.contains(purchaseToken)
+
+    // Committed synchronously, so that a purchase isn't processed again if the process dies
+    // right after it was acknowledged or consumed. All tokens are written in one commit.
+    override fun markProcessed(purchaseTokens: Collection<String>) {
+        if (purchaseTokens.isEmpty()) return
+        val editor = prefs.edit()
+        val now = System.currentTimeMillis()
+        purchaseTokens.forEach { editor.putLong(it, now) }
+        editor.commit()
+    }
+
+    override fun retainOnly(purchaseTokens: Set<String>) {
+        val stale = prefs.all.keys - purchaseTokens
+        if (stale.isEmpty()) return
+        val editor = prefs.edit()
+        stale.forEach(editor::remove)
+        editor.commit()
+    }
+}
+
+/** Purchases that failed with a transient error, to be retried by [PurchaseRetryWorker]. */
+interface PurchaseRetryQueue {
+    fun add(work: PurchaseWork)
+    fun remove(purchaseToken: String)
+    fun pending(): List<PurchaseWork>
+}
+
+class SharedPreferencesPurchaseRetryQueue(context: Context) : PurchaseRetryQueue {
+    private val prefs = context.applicationContext
+        .getSharedPreferences("purchase_retry_queue", Context.MODE_PRIVATE)
+
+    override fun add(work: PurchaseWork) = synchronized(lock) {
+        prefs.edit().putString(work.purchaseToken, work.action.name).apply()
+    }
+
+    override fun remove(purchaseToken: String) = synchronized(lock) {
+        prefs.edit().remove(purchaseToken).apply()
+    }
+
+    override fun pending(): List<PurchaseWork> = synchronized(lock) {
+        prefs.all.mapNotNull { (purchaseToken, action) ->
+            runCatching { PurchaseWork(purchaseToken, PurchaseAction.valueOf(action as String)) }.getOrNull()
+        }
+    }
+
+    private companion object {
+        val lock = Any()
+    }
+}
+
+/**
+ * The durations of the recent runs of each stage of [PurchaseProcessor], in milliseconds.
+ * Keeps the last [capacity] samples per stage.
+ */
+class StageLatencies(private val capacity: Int = 1_024) {
+    private class Samples(capacity: Int) {
+        val values = LongArray(capacity)
+        var count = 0L
+    }
+
+    private val stages = ConcurrentHashMap<String, Samples>()
+
+    fun record(stage: String, millis: Long) {
+        val samples = stages.computeIfAbsent(stage) { Samples(capacity) }
+        synchronized(samples) {
+            samples.values[(samples.count % capacity).toInt()] = millis
+            samples.count++
+        }
+    }
+
+    /** The [percentile] of the recent durations of [stage], or null if it never ran. */
+    fun percentile(stage: String, percentile: Double): Long? {
+        val samples = stages[stage] ?: return null
+        val sorted = synchronized(samples) {
+            samples.values.copyOf(minOf(samples.count, capacity.toLong()).toInt())
+        }
+        if (sorted.isEmpty()) return null
+        sorted.sort()
+        val index = (sorted.size * percentile / 100).toInt().coerceIn(0, sorted.size - 1)
+        return sorted[index]
+    }
+
+    /** One line per stage with its p50, p90 and p99 in milliseconds. */
+    fun summary(): String = stages.keys.sorted().joinToString("\n") { stage ->
+        String.format(
+            Locale.ROOT,
+            "%s: p50=%d p90=%d p99=%d",
+            stage,
+            percentile(stage, 50.0),
+            percentile(stage, 90.0),
+            percentile(stage, 99.0),
+        )
+    }
+}
+
+data class ProcessingReport(val processed: Int, val skipped: Int, val queued: Int, val failed: Int)
+
+/**
+ * Acknowledges or consumes batches of purchases, such as all purchases restored by
+ * `queryPurchasesAsync` or delivered to `onPurchasesUpdated`.
+ *
+ * - Up to [maxConcurrency] purchases are processed at the same time, over the shared
+ *   connection of [engine], instead of one callback chain per purchase.
+ * - Tokens that were processed are recorded in [store], so that they're skipped on later
+ *   batches, including after a restart. Tokens already being processed are skipped too.
+ *   [restore] forgets the tokens that Google Play no longer returns, such as consumed ones.
+ * - Purchases that still fail with a transient error after the engine's retries are added to
+ *   [retryQueue], which [PurchaseRetryWorker] drains when the device is online.
+ * - The duration of each stage is recorded in [latencies].
+ * - [store] is read and written on [ioDispatcher], since its writes are committed
+ *   synchronously, and the caller is often on the main thread.
+ *
+ * Grant the entitlement before processing a purchase: once acknowledged or consumed, a
+ * purchase is not delivered again.
+ */
+class PurchaseProcessor(
+    private val engine: BillingEngine,
+    private val store: ProcessedPurchaseStore,
+    private val retryQueue: PurchaseRetryQueue,
+    private val maxConcurrency: Int = 8,
+    private val actionFor: (Purchase) -> PurchaseAction = { PurchaseAction.ACKNOWLEDGE },
+    private val scheduleRetry: () -> Unit = {},
+    private val ioDispatcher: CoroutineDispatcher = Dispatchers.IO,
+    private val clockMs: () -> Long = System::currentTimeMillis,
+) {
+    private enum class Outcome { PROCESSED, SKIPPED, QUEUED, FAILED }
+
+    private val inFlight = ConcurrentHashMap.newKeySet<String>()
+
+    val latencies = StageLatencies()
+
+    /**
+     * Processes the purchased [purchases]. Pending purchases, and acknowledged purchases that
+     * don't need to be consumed, are skipped; the latter are recorded in [store] in one write.
+     */
+    suspend fun process(purchases: List<Purchase>): ProcessingReport {
+        val acknowledged = ArrayList<String>()
+        val work = purchases
+            .filter { it.purchaseState == Purchase.PurchaseState.PURCHASED }
+            .mapNotNull { purchase ->
+                val action = actionFor(purchase)
+                if (action == PurchaseAction.ACKNOWLEDGE && purchase.isAcknowledged) {
+                    acknowledged += purchase.purchaseToken
+                    null
+                } else {
+                    PurchaseWork(purchase.purchaseToken, action)
+                }
+            }
+        if (acknowledged.isNotEmpty()) withContext(ioDispatcher) { store.markProcessed(acknowledged) }
+        return processWork(work)
+    }
+
+    /**
+     * Queries all in-app and subscription purchases, processes them, and forgets the processed
+     * tokens that are no longer returned, so that [store] doesn't grow with every purchase.
+     */
+    suspend fun restore(): ProcessingReport {
+        val purchases = coroutineScope {
+            listOf(BillingClient.ProductType.INAPP, BillingClient.ProductType.SUBS)
+                .map { productType -> async { engine.queryPurchases(productType) } }
+                .awaitAll()
+                .flatten()
+        }
+        withContext(ioDispatcher) { store.retainOnly(purchases.mapTo(HashSet()) { it.purchaseToken }) }
+        return process(purchases)
+    }
+
+    /** Retries the purchases in the retry queue. */
+    suspend fun retryPending(): ProcessingReport = processWork(retryQueue.pending())
+
+    suspend fun processWork(work: Collection<PurchaseWork>): ProcessingReport {
+        val start = clockMs()
+        val permits = Semaphore(maxConcurrency)
+        val outcomes = coroutineScope {
+            work.distinctBy { it.purchaseToken }.map { item ->
+                async { permits.withPermit { processOne(item) } }
+            }.awaitAll()
+        }
+        latencies.record(STAGE_BATCH, clockMs() - start)
+        val report = ProcessingReport(
+            processed = outcomes.count { it == Outcome.PROCESSED },
+            skipped = outcomes.count { it == Outcome.SKIPPED },
+            queued = outcomes.count { it == Outcome.QUEUED },
+            failed = outcomes.count { it == Outcome.FAILED },
+        )
+        if (report.queued > 0) scheduleRetry()
+        return report
+    }
+
+    private suspend fun processOne(work: PurchaseWork): Outcome {
+        val token = work.purchaseToken
+        // Claim the token before checking the store, so that a concurrent batch can't process
+        // it between the check and the claim.
+        if (!inFlight.add(token)) return Outcome.SKIPPED
+        if (withContext(ioDispatcher) { store.isProcessed(token) }) {
+            inFlight.remove(token)
+            retryQueue.remove(token)
+            return Outcome.SKIPPED
+        }
+        val start = clockMs()
+        try {
+            when (work.action) {
+                PurchaseAction.ACKNOWLEDGE -> engine.acknowledge(token)
+                PurchaseAction.CONSUME -> engine.consume(token)
+            }
+            withContext(ioDispatcher) { store.markProcessed(listOf(token)) }
+            retryQueue.remove(token)
+            return Outcome.PROCESSED
+        } catch (e: CancellationException) {
+            retryQueue.add(work)
+            throw e
+        } catch (e: BillingException) {
+            return if (e.isRetryable) {
+                retryQueue.add(work)
+                Outcome.QUEUED
+            } else {
+                Log.e(TAG, "Failed to ${work.action.name.lowercase()} purchase", e)
+                retryQueue.remove(token)
+                Outcome.FAILED
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "Failed to ${work.action.name.lowercase()} purchase, queued for retry", e)
+            retryQueue.add(work)
+            return Outcome.QUEUED
+        } finally {
+            latencies.record(work.action.name.lowercase(), clockMs() - start)
+            inFlight.remove(token)
+        }
+    }
+
+    companion object {
+        private const val TAG = "PurchaseProcessor"
+        const val STAGE_BATCH = "batch"
+
+        fun create(
+            context: Context,
+            engine: BillingEngine,
+            actionFor: (Purchase) -> PurchaseAction = { PurchaseAction.ACKNOWLEDGE },
+        ) = PurchaseProcessor(
+            engine = engine,
+            store = SharedPreferencesProcessedPurchaseStore(context),
+            retryQueue = SharedPreferencesPurchaseRetryQueue(context),
+            actionFor = actionFor,
+            scheduleRetry = { PurchaseRetryWorker.enqueue(context) },
+        )
+    }
+}
+
+/** Drains the [PurchaseRetryQueue], and retries with backoff while purchases remain in it. */
+class PurchaseRetryWorker(context: Context, workerParams: WorkerParameters) :
+    CoroutineWorker(context, workerParams) {
+
+    override suspend fun doWork(): Result = coroutineScope {
+        val retryQueue = SharedPreferencesPurchaseRetryQueue(applicationContext)
+        if (retryQueue.pending().isEmpty()) return@coroutineScope Result.success()
+
+        val billingClient = BillingClient.newBuilder(applicationContext)
+            .setListener { _, _ -> }
+            .enablePendingPurchases(PendingPurchasesParams.newBuilder().enableOneTimeProducts().build())
+            .build()
+        val engine = BillingEngine(billingClient.asBillingService(), this)
+        try {
+            val processor = PurchaseProcessor(
+                engine,
+                SharedPreferencesProcessedPurchaseStore(applicationContext),
+                retryQueue,
+            )
+            val report = processor.retryPending()
+            Log.d(TAG, "$report\n${processor.latencies.summary()}")
+            if (report.queued > 0) Result.retry() else Result.success()
+        } finally {
+            engine.close()
+        }
+    }
+
+    companion object {
+        private const val TAG = "PurchaseRetryWorker"
+
+        fun enqueue(context: Context) {
+            val request = OneTimeWorkRequestBuilder<PurchaseRetryWorker>()
+                .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context)
+                .enqueueUniqueWork("purchase_retry", ExistingWorkPolicy.KEEP, request)
+        }
+    }
+}
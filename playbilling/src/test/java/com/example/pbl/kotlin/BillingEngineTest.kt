@@ -0,0 +1,253 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.pbl.kotlin
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode
+import com.android.billingclient.api.BillingClient.ProductType
+import com.android.billingclient.api.BillingClientStateListener
+import com.android.billingclient.api.BillingResult
+import com.android.billingclient.api.ProductDetails
+import com.android.billingclient.api.Purchase
+import kotlin.random.Random
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class BillingEngineTest {
+
+    /**
+     * Simulates Google Play in virtual time: connecting takes [connectMs], every call takes
+     * [latencyMs], and each connection drops after [uptimeMs]. Calls that are in flight when
+     * the connection drops fail with SERVICE_DISCONNECTED.
+     */
+    private class FlappingBillingService(
+        private val scope: CoroutineScope,
+        private val connectMs: Long = 100,
+        private val latencyMs: Long = 20,
+        private val uptimeMs: Long = 1_000,
+    ) : BillingService {
+        var setupResponseCode = BillingResponseCode.OK
+        var acknowledgeResponseCode = BillingResponseCode.OK
+        var connected = false
+        var connects = 0
+        var purchaseQueries = 0
+        var productDetailsQueries = 0
+        val acknowledged = HashSet<String>()
+
+        override fun startConnection(listener: BillingClientStateListener) {
+            connects++
+            scope.launch {
+                delay(connectMs)
+                if (setupResponseCode != BillingResponseCode.OK) {
+                    listener.onBillingSetupFinished(result(setupResponseCode))
+                    return@launch
+                }
+                connected = true
+                listener.onBillingSetupFinished(result(BillingResponseCode.OK))
+                delay(uptimeMs)
+                connected = false
+                listener.onBillingServiceDisconnected()
+            }
+        }
+
+        override fun endConnection() {
+            connected = false
+        }
+
+        override fun queryPurchases(productType: String, callback: (BillingResult, List<Purchase>) -> Unit) {
+            purchaseQueries++
+            respond(BillingResponseCode.OK) { callback(it, emptyList()) }
+        }
+
+        override fun queryProductDetails(
+            productType: String,
+            productIds: List<String>,
+            callback: (BillingResult, List<ProductDetails>) -> Unit,
+        ) {
+            productDetailsQueries++
+            respond(BillingResponseCode.OK) { callback(it, emptyList()) }
+        }
+
+        override fun acknowledge(purchaseToken: String, callback: (BillingResult) -> Unit) {
+            respond(acknowledgeResponseCode) {
+                if (it.responseCode == BillingResponseCode.OK) acknowledged += purchaseToken
+                callback(it)
+            }
+        }
+
+        override fun consume(purchaseToken: String, callback: (BillingResult) -> Unit) {
+            respond(BillingResponseCode.OK, callback)
+        }
+
+        private fun respond(responseCode: Int, callback: (BillingResult) -> Unit) {
+            val wasConnected = connected
+            scope.launch {
+                delay(latencyMs)
+                val stillConnected = wasConnected && connected
+                callback(result(if (stillConnected) responseCode else BillingResponseCode.SERVICE_DISCONNECTED))
+            }
+        }
+
+        private fun result(responseCode: Int) =
+            BillingResult.newBuilder().setResponseCode(responseCode).build()
+    }
+
+    @Test
+    fun throughputUnderConnectionFlapping() = runTest {
+        val service = FlappingBillingService(backgroundScope)
+        val engine = BillingEngine(
+            service,
+            backgroundScope,
+            BillingBackoff(initialDelayMs = 50, maxDelayMs = 1_000, random = Random(42)),
+            maxAttempts = 20,
+        )
+        val start = testScheduler.currentTime
+        List(WORKERS) { worker ->
+            async {
+                repeat(ACKS_PER_WORKER) { engine.acknowledge("token-$worker-$it") }
+            }
+        }.awaitAll()
+        val elapsedMs = testScheduler.currentTime - start
+
+        assertEquals(WORKERS * ACKS_PER_WORKER, service.acknowledged.size)
+        assertTrue(service.connects > 1)
+        println(
+            "${service.acknowledged.size} acknowledgements in $elapsedMs virtual ms " +
+                "(${service.acknowledged.size * 1000L / elapsedMs}/s) over ${engine.connections} connections, " +
+                "${engine.requests - service.acknowledged.size} replayed requests"
+        )
+    }
+
+    @Test
+    fun identicalQueriesShareOneRequest() = runTest {
+        val service = FlappingBillingService(backgroundScope, uptimeMs = Long.MAX_VALUE)
+        val engine = BillingEngine(service, backgroundScope)
+
+        List(100) { async { engine.queryPurchases(ProductType.SUBS) } }.awaitAll()
+        List(100) { i ->
+            val productIds = if (i % 2 == 0) listOf("a", "b") else listOf("b", "a")
+            async { engine.queryProductDetails(ProductType.INAPP, productIds) }
+        }.awaitAll()
+
+        assertEquals(1, service.connects)
+        assertEquals(1, service.purchaseQueries)
+        assertEquals(1, service.productDetailsQueries)
+
+        // Once the first query completed, the next one is sent again.
+        engine.queryPurchases(ProductType.SUBS)
+        assertEquals(2, service.purchaseQueries)
+    }
+
+    @Test
+    fun nonRetryableErrorsFailRightAway() = runTest {
+        val service = FlappingBillingService(backgroundScope, uptimeMs = Long.MAX_VALUE)
+        service.acknowledgeResponseCode = BillingResponseCode.ITEM_NOT_OWNED
+        val engine = BillingEngine(service, backgroundScope)
+        try {
+            engine.acknowledge("token")
+            fail()
+        } catch (e: BillingException) {
+            assertEquals(BillingResponseCode.ITEM_NOT_OWNED, e.billingResult.responseCode)
+        }
+        assertEquals(1, engine.requests)
+    }
+
+    @Test
+    fun setupFailureFailsWaitingCalls() = runTest {
+        val service = FlappingBillingService(backgroundScope)
+        service.setupResponseCode = BillingResponseCode.BILLING_UNAVAILABLE
+        val engine = BillingEngine(service, backgroundScope)
+        val calls = List(10) {
+            async { runCatching { engine.queryPurchases(ProductType.INAPP) } }
+        }.awaitAll()
+        for (call in calls) {
+            val error = call.exceptionOrNull() as BillingException
+            assertEquals(BillingResponseCode.BILLING_UNAVAILABLE, error.billingResult.responseCode)
+        }
+        assertEquals(0, service.purchaseQueries)
+    }
+
+    @Test
+    fun callsAfterSetupFailureReconnectWithBackoff() = runTest {
+        val service = FlappingBillingService(backgroundScope)
+        service.setupResponseCode = BillingResponseCode.BILLING_UNAVAILABLE
+        val engine = BillingEngine(service, backgroundScope, BillingBackoff(1_000, 1_000, Random(42)))
+        val backoff = BillingBackoff(1_000, 1_000, Random(42))
+        val expectedDelays = listOf(backoff.delayFor(1), backoff.delayFor(2))
+
+        repeat(3) { runCatching { engine.queryPurchases(ProductType.INAPP) } }
+
+        assertEquals(3, service.connects)
+        assertEquals(3 * 100 + expectedDelays.sum(), testScheduler.currentTime)
+    }
+
+    @Test
+    fun connectionGivesUpAfterMaxAttempts() = runTest {
+        val service = FlappingBillingService(backgroundScope)
+        service.setupResponseCode = BillingResponseCode.SERVICE_UNAVAILABLE
+        val engine = BillingEngine(service, backgroundScope, maxAttempts = 3)
+        val calls = List(10) {
+            async { runCatching { engine.queryPurchases(ProductType.INAPP) } }
+        }.awaitAll()
+        for (call in calls) {
+            val error = call.exceptionOrNull() as BillingException
+            assertEquals(BillingResponseCode.SERVICE_UNAVAILABLE, error.billingResult.responseCode)
+        }
+        assertEquals(3, service.connects)
+        assertTrue(engine.connectionState.value is BillingEngine.ConnectionState.Failed)
+    }
+
+    @Test
+    fun closeFailsWaitingAndLaterCalls() = runTest {
+        val service = FlappingBillingService(backgroundScope)
+        val engine = BillingEngine(service, backgroundScope)
+        val waiting = async { runCatching { engine.queryPurchases(ProductType.INAPP) } }
+        runCurrent()
+
+        engine.close()
+        val error = waiting.await().exceptionOrNull() as BillingException
+        assertEquals(BillingResponseCode.DEVELOPER_ERROR, error.billingResult.responseCode)
+
+        val later = runCatching { engine.acknowledge("token") }.exceptionOrNull() as BillingException
+        assertEquals(BillingResponseCode.DEVELOPER_ERROR, later.billingResult.responseCode)
+        assertEquals(1, service.connects)
+        assertEquals(BillingEngine.ConnectionState.Closed, engine.connectionState.value)
+    }
+
+    @Test
+    fun backoffUsesFullJitter() {
+        val backoff = BillingBackoff(initialDelayMs = 100, maxDelayMs = 1_000, random = Random(7))
+        val delays = List(1_000) { backoff.delayFor(4) }
+        assertTrue(delays.all { it in 0..800 })
+        assertTrue(delays.any { it < 400 })
+    }
+
+    private companion object {
+        const val WORKERS = 50
+        const val ACKS_PER_WORKER = 40
+    }
+}
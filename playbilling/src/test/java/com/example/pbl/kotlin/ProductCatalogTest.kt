@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.pbl.kotlin
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.android.billingclient.api.BillingClient.ProductType
+import com.android.billingclient.api.ProductDetails
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+class ProductCatalogTest {
+
+    // Returns details titled with the current version for every product but UNKNOWN, after
+    // waiting for the gate if there is one.
+    private class FakeProductDetailsQuery : ProductDetailsQuery {
+        val calls = ArrayList<List<String>>()
+        var gate: CompletableDeferred<Unit>? = null
+        var version = 1
+
+        override suspend fun query(productType: String, productIds: List<String>): List<ProductDetails> {
+            calls += productIds
+            gate?.await()
+            return productIds.filter { it != UNKNOWN }.map { details(productType, it, "v$version") }
+        }
+    }
+
+    private val prefs = ApplicationProvider.getApplicationContext<Context>()
+        .getSharedPreferences("product_catalog_test", Context.MODE_PRIVATE)
+    private val query = FakeProductDetailsQuery()
+    private var now = 1_000L
+
+    private fun TestScope.catalog(chunkSize: Int = 20) = ProductCatalog(
+        query = query,
+        prefs = prefs,
+        scope = backgroundScope,
+        ttlMillis = TTL_MS,
+        chunkSize = chunkSize,
+        ioDispatcher = StandardTestDispatcher(testScheduler),
+        clock = { now },
+    )
+
+    @Test
+    fun concurrentLookupsShareOneQueryPerProduct() = runTest {
+        val catalog = catalog()
+        query.gate = CompletableDeferred()
+
+        val first = async { catalog.productDetails(ProductType.INAPP, listOf("a", "b")) }
+        val second = async { catalog.productDetails(ProductType.INAPP, listOf("b", "c")) }
+        runCurrent()
+        query.gate!!.complete(Unit)
+
+        assertEquals(setOf("a", "b"), first.await().keys)
+        assertEquals(setOf("b", "c"), second.await().keys)
+        assertEquals(listOf(listOf("a", "b"), listOf("c")), query.calls)
+    }
+
+    @Test
+    fun lookupsAreSplitIntoChunksAndUnknownProductsLeftOut() = runTest {
+        val catalog = catalog(chunkSize = 2)
+
+        val details = catalog.productDetails(ProductType.INAPP, listOf("a", "b", "c", UNKNOWN, "e"))
+
+        assertEquals(setOf("a", "b", "c", "e"), details.keys)
+        assertEquals(listOf(listOf("a", "b"), listOf("c", UNKNOWN), listOf("e")), query.calls)
+        assertEquals(3, catalog.queries)
+        assertTrue(prefs.all.keys.none { UNKNOWN in it })
+    }
+
+    @Test
+    fun detailsAreQueriedAgainOnceExpired() = runTest {
+        val catalog = catalog()
+        catalog.productDetails(ProductType.INAPP, listOf("a"))
+
+        now += TTL_MS - 1
+        catalog.productDetails(ProductType.INAPP, listOf("a"))
+        assertEquals(1, query.calls.size)
+
+        now += 1
+        catalog.productDetails(ProductType.INAPP, listOf("a"))
+        assertEquals(2, query.calls.size)
+    }
+
+    @Test
+    fun expiredListingsAreServedAndRefreshedInTheBackground() = runTest {
+        val catalog = catalog()
+        catalog.listings(ProductType.INAPP, listOf("a"))
+
+        now += TTL_MS
+        query.version = 2
+        query.gate = CompletableDeferred()
+        // Returns the expired listing without waiting for the refresh.
+        assertEquals("v1", catalog.listings(ProductType.INAPP, listOf("a"))["a"]?.title)
+
+        query.gate!!.complete(Unit)
+        runCurrent()
+        assertEquals("v2", catalog.listings(ProductType.INAPP, listOf("a"))["a"]?.title)
+        assertEquals(2, query.calls.size)
+    }
+
+    @Test
+    fun listingsAreRestoredAfterARestart() = runTest {
+        catalog().listings(ProductType.INAPP, listOf("a"))
+
+        val restarted = catalog()
+        assertEquals("v1", restarted.listings(ProductType.INAPP, listOf("a"))["a"]?.title)
+        assertEquals(1, query.calls.size)
+
+        // ProductDetails can't be restored, so they are queried again.
+        restarted.productDetails(ProductType.INAPP, listOf("a"))
+        assertEquals(2, query.calls.size)
+    }
+
+    private companion object {
+        const val TTL_MS = 60_000L
+        const val UNKNOWN = "unknown"
+
+        fun details(productType: String, productId: String, title: String): ProductDetails {
+            val details = mock<ProductDetails>()
+            whenever(details.productId).thenReturn(productId)
+            whenever(details.productType).thenReturn(productType)
+            whenever(details.name).thenReturn("Name of $productId")
+            whenever(details.title).thenReturn(title)
+            whenever(details.description).thenReturn("Description of $productId")
+            return details
+        }
+    }
+}
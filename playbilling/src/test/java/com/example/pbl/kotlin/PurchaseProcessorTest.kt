@@ -0,0 +1,224 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.pbl.kotlin
+
+import com.android.billingclient.api.BillingClient.BillingResponseCode
+import com.android.billingclient.api.BillingClientStateListener
+import com.android.billingclient.api.BillingResult
+import com.android.billingclient.api.ProductDetails
+import com.android.billingclient.api.Purchase
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+
+class PurchaseProcessorTest {
+
+    // Stays connected, answers every call after LATENCY_MS, and fails the tokens in failures.
+    private class StubBillingService(private val scope: CoroutineScope) : BillingService {
+        val failures = HashMap<String, Int>()
+        val acknowledged = ArrayList<String>()
+        val consumed = ArrayList<String>()
+        var inFlight = 0
+        var maxInFlight = 0
+
+        override fun startConnection(listener: BillingClientStateListener) {
+            listener.onBillingSetupFinished(result(BillingResponseCode.OK))
+        }
+
+        override fun endConnection() {}
+
+        override fun queryPurchases(productType: String, callback: (BillingResult, List<Purchase>) -> Unit) =
+            callback(result(BillingResponseCode.OK), emptyList())
+
+        override fun queryProductDetails(
+            productType: String,
+            productIds: List<String>,
+            callback: (BillingResult, List<ProductDetails>) -> Unit,
+        ) = callback(result(BillingResponseCode.OK), emptyList())
+
+        override fun acknowledge(purchaseToken: String, callback: (BillingResult) -> Unit) =
+            respond(purchaseToken, acknowledged, callback)
+
+        override fun consume(purchaseToken: String, callback: (BillingResult) -> Unit) =
+            respond(purchaseToken, consumed, callback)
+
+        private fun respond(purchaseToken: String, done: MutableList<String>, callback: (BillingResult) -> Unit) {
+            inFlight++
+            maxInFlight = maxOf(maxInFlight, inFlight)
+            scope.launch {
+                delay(LATENCY_MS)
+                inFlight--
+                val responseCode = failures[purchaseToken] ?: BillingResponseCode.OK
+                if (responseCode == BillingResponseCode.OK) done += purchaseToken
+                callback(result(responseCode))
+            }
+        }
+
+        private fun result(responseCode: Int) =
+            BillingResult.newBuilder().setResponseCode(responseCode).build()
+    }
+
+    private class InMemoryProcessedPurchaseStore : ProcessedPurchaseStore {
+        val tokens = HashSet<String>()
+        var writes = 0
+        override fun isProcessed(purchaseToken: String) = purchaseToken in tokens
+        override fun markProcessed(purchaseTokens: Collection<String>) {
+            tokens += purchaseTokens
+            writes++
+        }
+        override fun retainOnly(purchaseTokens: Set<String>) {
+            tokens.retainAll(purchaseTokens)
+        }
+    }
+
+    private class InMemoryPurchaseRetryQueue : PurchaseRetryQueue {
+        val queued = LinkedHashMap<String, PurchaseWork>()
+        override fun add(work: PurchaseWork) {
+            queued[work.purchaseToken] = work
+        }
+        override fun remove(purchaseToken: String) {
+            queued.remove(purchaseToken)
+        }
+        override fun pending() = queued.values.toList()
+    }
+
+    private val store = InMemoryProcessedPurchaseStore()
+    private val retryQueue = InMemoryPurchaseRetryQueue()
+    private var retriesScheduled = 0
+
+    private fun TestScope.processor(service: BillingService) = PurchaseProcessor(
+        engine = BillingEngine(service, backgroundScope, BillingBackoff(initialDelayMs = 10, maxDelayMs = 10), maxAttempts = 2),
+        store = store,
+        retryQueue = retryQueue,
+        maxConcurrency = CONCURRENCY,
+        scheduleRetry = { retriesScheduled++ },
+        ioDispatcher = StandardTestDispatcher(testScheduler),
+        clockMs = { testScheduler.currentTime },
+    )
+
+    @Test
+    fun batchIsProcessedWithBoundedConcurrency() = runTest {
+        val service = StubBillingService(backgroundScope)
+        val work = List(PURCHASES) { PurchaseWork("token-$it", if (it % 2 == 0) PurchaseAction.ACKNOWLEDGE else PurchaseAction.CONSUME) }
+
+        val report = processor(service).processWork(work)
+
+        assertEquals(ProcessingReport(processed = PURCHASES, skipped = 0, queued = 0, failed = 0), report)
+        assertEquals(PURCHASES / 2, service.acknowledged.size)
+        assertEquals(PURCHASES / 2, service.consumed.size)
+        assertEquals(CONCURRENCY, service.maxInFlight)
+        assertEquals(PURCHASES / CONCURRENCY * LATENCY_MS, testScheduler.currentTime)
+        assertEquals(PURCHASES, store.tokens.size)
+    }
+
+    @Test
+    fun processedAndConcurrentTokensAreSkipped() = runTest {
+        val service = StubBillingService(backgroundScope)
+        val processor = processor(service)
+        store.markProcessed(listOf("done"))
+        val work = listOf(PurchaseWork("done", PurchaseAction.ACKNOWLEDGE), PurchaseWork("new", PurchaseAction.ACKNOWLEDGE))
+
+        val reports = List(3) { async { processor.processWork(work) } }.awaitAll()
+
+        assertEquals(listOf("new"), service.acknowledged)
+        assertEquals(1, reports.sumOf { it.processed })
+        assertEquals(5, reports.sumOf { it.skipped })
+    }
+
+    @Test
+    fun transientFailuresAreQueuedAndOthersAreNot() = runTest {
+        val service = StubBillingService(backgroundScope)
+        service.failures["flaky"] = BillingResponseCode.SERVICE_UNAVAILABLE
+        service.failures["gone"] = BillingResponseCode.ITEM_NOT_OWNED
+        val processor = processor(service)
+        val work = listOf("ok", "flaky", "gone").map { PurchaseWork(it, PurchaseAction.CONSUME) }
+
+        val report = processor.processWork(work)
+
+        assertEquals(ProcessingReport(processed = 1, skipped = 0, queued = 1, failed = 1), report)
+        assertEquals(listOf("flaky"), retryQueue.pending().map { it.purchaseToken })
+        assertEquals(1, retriesScheduled)
+
+        service.failures.remove("flaky")
+        assertEquals(1, processor.retryPending().processed)
+        assertTrue(retryQueue.pending().isEmpty())
+        assertEquals(listOf("ok", "flaky"), service.consumed)
+    }
+
+    @Test
+    fun acknowledgedPurchasesAreRecordedInOneWrite() = runTest {
+        val service = StubBillingService(backgroundScope)
+        val purchases = listOf(
+            purchase("acknowledged-1", acknowledged = true),
+            purchase("acknowledged-2", acknowledged = true),
+            purchase("new", acknowledged = false),
+        )
+
+        val report = processor(service).process(purchases)
+
+        assertEquals(1, report.processed)
+        assertEquals(listOf("new"), service.acknowledged)
+        assertEquals(setOf("acknowledged-1", "acknowledged-2", "new"), store.tokens)
+        assertEquals(2, store.writes)
+    }
+
+    @Test
+    fun latenciesAreRecordedPerStage() = runTest {
+        val processor = processor(StubBillingService(backgroundScope))
+        processor.processWork(List(4) { PurchaseWork("token-$it", PurchaseAction.ACKNOWLEDGE) })
+
+        assertEquals(LATENCY_MS, processor.latencies.percentile("acknowledge", 50.0))
+        assertEquals(LATENCY_MS, processor.latencies.percentile(PurchaseProcessor.STAGE_BATCH, 99.0))
+        assertNull(processor.latencies.percentile("consume", 50.0))
+    }
+
+    @Test
+    fun stageLatenciesKeepTheMostRecentSamples() {
+        val latencies = StageLatencies(capacity = 100)
+        (1L..1_000L).forEach { latencies.record("stage", it) }
+
+        assertEquals(951L, latencies.percentile("stage", 50.0))
+        assertEquals(991L, latencies.percentile("stage", 90.0))
+        assertEquals(1_000L, latencies.percentile("stage", 100.0))
+        assertEquals("stage: p50=951 p90=991 p99=1000", latencies.summary())
+    }
+
+    private companion object {
+        const val PURCHASES = 64
+        const val CONCURRENCY = 8
+        const val LATENCY_MS = 50L
+
+        fun purchase(purchaseToken: String, acknowledged: Boolean): Purchase {
+            val purchase = mock<Purchase>()
+            whenever(purchase.purchaseToken).thenReturn(purchaseToken)
+            whenever(purchase.purchaseState).thenReturn(Purchase.PurchaseState.PURCHASED)
+            whenever(purchase.isAcknowledged).thenReturn(acknowledged)
+            return purchase
+        }
+    }
+}
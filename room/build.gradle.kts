@@ -32,6 +32,14 @@ android {
             jvmTarget = JvmTarget.fromTarget("17")
         }
     }
+    testOptions {
+        unitTests.all { test ->
+            // Forwards benchmark sizes, e.g. ./gradlew :room:test -Dnested.users=10000
+            listOf("nested.users", "seed.rows").forEach { name ->
+                System.getProperty(name)?.let { test.systemProperty(name, it) }
+            }
+        }
+    }
 }
 
 dependencies {
@@ -50,7 +58,9 @@ dependencies {
     implementation(libs.androidx.sqlite.async)
     implementation(libs.androidx.tracing)
     implementation(libs.kotlinx.coroutines.android)
+    implementation(libs.kotlinx.serialization.json)
     testImplementation(libs.junit)
+    testImplementation(libs.kotlinx.coroutines.test)
     androidTestImplementation(libs.androidx.test.ext.junit)
     androidTestImplementation(libs.androidx.test.espresso.core)
     androidTestImplementation(libs.androidx.test.core)
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.accessingdata
+
+import androidx.room3.RoomDatabase
+import androidx.room3.useReaderConnection
+import androidx.sqlite.SQLiteConnection
+import androidx.sqlite.SQLiteStatement
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+
+/**
+ * Keeps up to [capacity] prepared statements of a [SQLiteConnection], evicting the least
+ * recently used one, so that queries that run repeatedly are only compiled once.
+ *
+ * Like the connection itself, a cache must only be used by one thread at a time. A statement
+ * is reset and its bindings cleared when it is released. If the same SQL is used again while
+ * its cached statement is still in use, for example by a nested query, a separate statement
+ * is prepared for the nested use and closed afterwards.
+ */
+class StatementCache(
+    private val connection: SQLiteConnection,
+    private val capacity: Int = 16,
+) : AutoCloseable {
+
+    private val statements = object : LinkedHashMap<String, SQLiteStatement>(capacity, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, SQLiteStatement>): Boolean {
+            val evict = size > capacity && eldest.value !in inUse
+            if (evict) eldest.value.close()
+            return evict
+        }
+    }
+    private val inUse = HashSet<SQLiteStatement>()
+
+    var hits = 0
+        private set
+    var misses = 0
+        private set
+
+    private fun acquire(sql: String): SQLiteStatement {
+        val cached = statements[sql]
+        val statement = when {
+            cached == null -> connection.prepare(sql).also {
+                misses++
+                statements[sql] = it
+            }
+            cached in inUse -> connection.prepare(sql)
+            else -> cached.also { hits++ }
+        }
+        inUse += statement
+        return statement
+    }
+
+    private fun release(sql: String, statement: SQLiteStatement) {
+        inUse -= statement
+        if (statements[sql] === statement) {
+            statement.reset()
+            statement.clearBindings()
+        } else {
+            statement.close()
+        }
+    }
+
+    /**
+     * Runs [block] with the cached statement for [sql], preparing it if needed.
+     */
+    fun <R> usePrepared(sql: String, block: (SQLiteStatement) -> R): R {
+        val statement = acquire(sql)
+        try {
+            return block(statement)
+        } finally {
+            release(sql, statement)
+        }
+    }
+
+    /**
+     * Runs [block] with the rows of [sql] as a [Sequence]. Rows are read as the sequence is
+     * iterated, each one into the same [holder] with [read], so the holder must be copied if it
+     * is kept after moving on to the next row. The sequence can't be used after [block]
+     * returns.
+     */
+    fun <H, R> query(
+        sql: String,
+        holder: H,
+        bind: (SQLiteStatement) -> Unit = {},
+        read: (SQLiteStatement, H) -> Unit,
+        block: (Sequence<H>) -> R,
+    ): R = usePrepared(sql) { statement ->
+        bind(statement)
+        block(
+            generateSequence {
+                if (statement.step()) holder.also { read(statement, it) } else null
+            }.constrainOnce()
+        )
+    }
+
+    /**
+     * Emits the rows of [sql] into a new holder from [newHolder] per collection, like [query].
+     * The statement is released when the collection completes or is cancelled.
+     */
+    fun <H> rowFlow(
+        sql: String,
+        newHolder: () -> H,
+        bind: (SQLiteStatement) -> Unit = {},
+        read: (SQLiteStatement, H) -> Unit,
+    ): Flow<H> = flow {
+        val holder = newHolder()
+        val statement = acquire(sql)
+        try {
+            bind(statement)
+            while (statement.step()) {
+                read(statement, holder)
+                emit(holder)
+            }
+        } finally {
+            release(sql, statement)
+        }
+    }
+
+    override fun close() {
+        statements.values.forEach { it.close() }
+        statements.clear()
+    }
+}
+
+/**
+ * Reads the rows of [sql] on a Room reader connection one at a time into [holder], without
+ * building a list of all rows.
+ */
+suspend fun <H> RoomDatabase.forEachRow(
+    sql: String,
+    holder: H,
+    bind: (SQLiteStatement) -> Unit = {},
+    read: (SQLiteStatement, H) -> Unit,
+    action: (H) -> Unit,
+) {
+    useReaderConnection { connection ->
+        connection.usePrepared(sql) { statement ->
+            bind(statement)
+            while (statement.step()) {
+                read(statement, holder)
+                action(holder)
+            }
+        }
+    }
+}
@@ -95,6 +95,20 @@ private object InvalidationTrackerExample {
         }
     }
     // [END android_room3_async_queries_invalidation]
+
+    // Debounces bursts of writes, cancels stale recomputations, and only fetches the tour
+    // states of artists that were added or changed.
+    fun getArtistToursIncremental(db: RoomDatabase, from: Date, to: Date): Flow<Map<Artist, TourState>> {
+        val tours = DiffingFetcher<Artist, Int, TourState>(
+            keyOf = { it.id },
+            fetch = { artists -> tourService.fetchStates(artists.map { it.id }) },
+        )
+        return db.invalidationQuery("Artist") {
+            val artists = artistsDao.getAllArtists()
+            val states = tours.update(artists)
+            associateTours(artists, artists.map { states.getValue(it) }, from, to)
+        }
+    }
 }
 
 // Custom converters examples
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.asyncqueries
+
+import androidx.room3.RoomDatabase
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.mapLatest
+import kotlinx.coroutines.flow.withIndex
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Reruns [compute] when this flow of invalidations emits, for example the flow returned by
+ * `invalidationTracker.createFlow()`.
+ *
+ * The first invalidation, which the tracker emits when collection starts, is computed right
+ * away. After that, invalidations are debounced by [debounceMillis], so a burst of writes
+ * causes a single recomputation once the writes have paused. If an invalidation arrives while
+ * [compute] is still running, that computation is cancelled, since its result would already
+ * be stale.
+ */
+@OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
+fun <T> Flow<*>.recomputeOnInvalidation(
+    debounceMillis: Long = 100L,
+    compute: suspend () -> T,
+): Flow<T> = withIndex()
+    .debounce { if (it.index == 0) 0L else debounceMillis }
+    .mapLatest { compute() }
+
+/**
+ * Like [recomputeOnInvalidation], for changes to [tables].
+ */
+fun <T> RoomDatabase.invalidationQuery(
+    vararg tables: String,
+    debounceMillis: Long = 100L,
+    compute: suspend () -> T,
+): Flow<T> = invalidationTracker.createFlow(*tables).recomputeOnInvalidation(debounceMillis, compute)
+
+/**
+ * Fetches a value for each item, such as remote state for each row of a query, and only
+ * fetches again for items that were added or changed since the previous call.
+ *
+ * Items are compared with [equals], and identified across calls by [keyOf]. Values of items
+ * that are no longer present are dropped. If a call is cancelled, for example by
+ * [recomputeOnInvalidation], the previous results are kept.
+ */
+class DiffingFetcher<T, K, V>(
+    private val keyOf: (T) -> K,
+    private val fetch: suspend (List<T>) -> List<V>,
+) {
+    private val mutex = Mutex()
+    private var previous: Map<K, Pair<T, V>> = emptyMap()
+
+    /** The number of items fetched so far. */
+    var fetchedItems = 0
+        private set
+
+    suspend fun update(items: List<T>): Map<T, V> = mutex.withLock {
+        val changed = items.filter { item -> previous[keyOf(item)]?.first != item }
+        val fetched = if (changed.isEmpty()) emptyList() else fetch(changed)
+        require(fetched.size == changed.size) { "fetch must return one value per item" }
+        fetchedItems += changed.size
+
+        val fetchedByKey = changed.map(keyOf).zip(fetched).toMap()
+        val current = LinkedHashMap<K, Pair<T, V>>(items.size)
+        for (item in items) {
+            val key = keyOf(item)
+            val value = if (key in fetchedByKey) fetchedByKey.getValue(key) else previous.getValue(key).second
+            current[key] = item to value
+        }
+        previous = current
+        current.values.associate { it }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.asyncqueries
+
+import androidx.room3.Dao
+import androidx.room3.DaoReturnTypeConverter
+import androidx.room3.DaoReturnTypeConverters
+import androidx.room3.Database
+import androidx.room3.OperationType
+import androidx.room3.ProvidedDaoReturnTypeConverter
+import androidx.room3.Query
+import androidx.room3.RoomDatabase
+import androidx.room3.RoomRawQuery
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+import kotlinx.coroutines.CancellationException
+
+/**
+ * A lock-free histogram of durations in nanoseconds, with buckets that grow exponentially like
+ * HdrHistogram: values below 64 are exact, and larger values are recorded with 32 buckets per
+ * power of two, so percentiles are accurate to about 3%.
+ */
+class LatencyHistogram {
+    private val counts = AtomicLongArray(BUCKETS)
+    private val total = AtomicLong()
+    private val max = AtomicLong()
+
+    val count: Long get() = total.get()
+    val maxNanos: Long get() = max.get()
+
+    fun record(nanos: Long) {
+        val value = nanos.coerceAtLeast(0)
+        counts.incrementAndGet(indexOf(value))
+        total.incrementAndGet()
+        var current = max.get()
+        while (value > current && !max.compareAndSet(current, value)) current = max.get()
+    }
+
+    /**
+     * The smallest bucket upper bound that at least [percentile] percent of the recorded values
+     * are below, or 0 if nothing was recorded.
+     */
+    fun valueAtPercentile(percentile: Double): Long {
+        val recorded = total.get()
+        if (recorded == 0L) return 0
+        val target = (recorded * percentile / 100).toLong().coerceIn(1, recorded)
+        var seen = 0L
+        for (index in 0 until BUCKETS) {
+            seen += counts.get(index)
+            if (seen >= target) return minOf(upperBoundOf(index), max.get())
+        }
+        return max.get()
+    }
+
+    internal companion object {
+        private const val SUB_BUCKET_BITS = 5
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val LINEAR_LIMIT = 2 * SUB_BUCKETS
+        private const val BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS
+
+        fun indexOf(value: Long): Int {
+            if (value < LINEAR_LIMIT) return value.toInt()
+            val shift = 63 - java.lang.Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS
+            val subBucket = (value ushr shift).toInt()
+            return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (subBucket - SUB_BUCKETS)
+        }
+
+        fun upperBoundOf(index: Int): Long {
+            if (index < LINEAR_LIMIT) return index.toLong()
+            val shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1
+            val subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS
+            return ((subBucket + 1).toLong() shl shift) - 1
+        }
+    }
+}
+
+class QueryStats(val template: String) {
+    val latency = LatencyHistogram()
+    private val rowCount = AtomicLong()
+    private val errorCount = AtomicLong()
+
+    val rows: Long get() = rowCount.get()
+    val errors: Long get() = errorCount.get()
+
+    internal fun record(nanos: Long, rows: Int, failed: Boolean) {
+        latency.record(nanos)
+        rowCount.addAndGet(rows.toLong())
+        if (failed) errorCount.incrementAndGet()
+    }
+}
+
+/**
+ * A query that took longer than the slow query threshold. [template] is the SQL with its
+ * literals replaced by `?`, so it never contains bound parameters or other user data.
+ */
+class SlowQuery(val template: String, val nanos: Long, val rows: Int, val timestampMillis: Long)
+
+/**
+ * Collects latency, row count and error metrics per SQL template, and keeps the last
+ * [slowQueryCapacity] queries slower than [slowQueryThresholdNanos]. Recording is lock-free,
+ * so it can be used from every query of the app.
+ */
+class QueryMetrics(
+    private val slowQueryThresholdNanos: Long = 100_000_000L,
+    private val slowQueryCapacity: Int = 32,
+    internal val nanoTime: () -> Long = System::nanoTime,
+) {
+    private val stats = ConcurrentHashMap<String, QueryStats>()
+    private val slowQueries = AtomicReferenceArray<SlowQuery?>(slowQueryCapacity)
+    private val slowQueryCount = AtomicLong()
+
+    fun record(sql: String, nanos: Long, rows: Int, failed: Boolean = false) {
+        val template = templateOf(sql)
+        stats.computeIfAbsent(template) { QueryStats(it) }.record(nanos, rows, failed)
+        if (nanos >= slowQueryThresholdNanos) {
+            val slot = (slowQueryCount.getAndIncrement() % slowQueryCapacity).toInt()
+            slowQueries.set(slot, SlowQuery(template, nanos, rows, System.currentTimeMillis()))
+        }
+    }
+
+    fun stats(): List<QueryStats> = stats.values.sortedByDescending { it.latency.count }
+
+    operator fun get(sql: String): QueryStats? = stats[templateOf(sql)]
+
+    /** The most recent slow queries, oldest first. */
+    fun slowQueries(): List<SlowQuery> {
+        val recorded = slowQueryCount.get()
+        val first = (recorded - slowQueryCapacity).coerceAtLeast(0)
+        return (first until recorded).mapNotNull { slowQueries.get((it % slowQueryCapacity).toInt()) }
+    }
+
+    /**
+     * A text table with the count, rows, errors and p50, p90, p99 and max latency in
+     * milliseconds of each query template, most frequent first.
+     */
+    fun dump(): String = buildString {
+        appendLine("count\trows\terrors\tp50\tp90\tp99\tmax\tquery")
+        for (query in stats()) {
+            val latency = query.latency
+            appendLine(
+                String.format(
+                    Locale.ROOT,
+                    "%d\t%d\t%d\t%.2f\t%.2f\t%.2f\t%.2f\t%s",
+                    latency.count,
+                    query.rows,
+                    query.errors,
+                    latency.valueAtPercentile(50.0) / 1e6,
+                    latency.valueAtPercentile(90.0) / 1e6,
+                    latency.valueAtPercentile(99.0) / 1e6,
+                    latency.maxNanos / 1e6,
+                    query.template,
+                )
+            )
+        }
+    }
+
+    fun reset() {
+        stats.clear()
+        for (i in 0 until slowQueryCapacity) slowQueries.set(i, null)
+        slowQueryCount.set(0)
+    }
+
+    companion object {
+        private val STRING_LITERAL = Regex("'(?:[^']|'')*'")
+        private val NUMBER_LITERAL = Regex("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])")
+        private val PARAMETER_LIST = Regex("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)")
+        private val WHITESPACE = Regex("\\s+")
+
+        /**
+         * Replaces the literals of [sql] with `?`, collapses `IN (?, ?, ...)` lists to a single
+         * `?`, and normalizes whitespace, so that all executions of a DAO method share one
+         * template and no data ends up in the metrics.
+         */
+        fun templateOf(sql: String): String = sql
+            .replace(STRING_LITERAL, "?")
+            .replace(NUMBER_LITERAL, "?")
+            .replace(PARAMETER_LIST, "(?)")
+            .replace(WHITESPACE, " ")
+            .trim()
+    }
+}
+
+class MeasuredQuery<T>(val result: T)
+
+/**
+ * Records the latency and row count of every DAO query that returns [MeasuredQuery] in
+ * [metrics]. Register it with `addDaoReturnTypeConverter`.
+ */
+@ProvidedDaoReturnTypeConverter
+class QueryMetricsConverter(private val metrics: QueryMetrics) {
+    @DaoReturnTypeConverter([OperationType.READ])
+    suspend fun <T> convert(
+        rawQuery: RoomRawQuery,
+        executeAndConvert: suspend () -> T
+    ): MeasuredQuery<T> {
+        val start = metrics.nanoTime()
+        val result = try {
+            executeAndConvert()
+        } catch (e: CancellationException) {
+            // The caller gave up on the query, which didn't fail.
+            throw e
+        } catch (e: Exception) {
+            metrics.record(rawQuery.sql, metrics.nanoTime() - start, rows = 0, failed = true)
+            throw e
+        }
+        val rows = when (result) {
+            null -> 0
+            is Collection<*> -> result.size
+            is Map<*, *> -> result.size
+            else -> 1
+        }
+        metrics.record(rawQuery.sql, metrics.nanoTime() - start, rows)
+        return MeasuredQuery(result)
+    }
+}
+
+@Dao
+@DaoReturnTypeConverters(QueryMetricsConverter::class)
+interface MeasuredSongDao {
+    @Query("SELECT * FROM Song")
+    suspend fun getAllSongs(): MeasuredQuery<List<Song>>
+
+    @Query("SELECT * FROM Song WHERE id IN (:ids)")
+    suspend fun getSongs(ids: List<Int>): MeasuredQuery<List<Song>>
+}
+
+/**
+ * A database with [MeasuredSongDao]. It must be built with
+ * `addDaoReturnTypeConverter(QueryMetricsConverter(metrics))`, which is why the measured DAO
+ * isn't part of [MyDatabase].
+ */
+@Database(entities = [Song::class], version = 1)
+abstract class MeasuredDatabase : RoomDatabase() {
+    abstract fun measuredSongDao(): MeasuredSongDao
+}
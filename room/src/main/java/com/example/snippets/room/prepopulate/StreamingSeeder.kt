@@ -0,0 +1,217 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.prepopulate
+
+import android.content.Context
+import android.util.Log
+import androidx.room3.Dao
+import androidx.room3.Database
+import androidx.room3.Entity
+import androidx.room3.Insert
+import androidx.room3.PrimaryKey
+import androidx.room3.Query
+import androidx.room3.RoomDatabase
+import androidx.room3.immediateTransaction
+import androidx.room3.useWriterConnection
+import androidx.sqlite.SQLiteStatement
+import java.io.Reader
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.jsonObject
+
+class SeedProgress(val rows: Long, val batches: Int, val elapsedNanos: Long) {
+    val rowsPerSecond: Double get() = if (elapsedNanos == 0L) 0.0 else rows * 1e9 / elapsedNanos
+}
+
+/**
+ * Imports a large stream of rows into a database, as an alternative to shipping a whole
+ * prebuilt database with `createFromAsset`.
+ *
+ * Rows are read lazily and inserted in batches of [batchSize], each in its own immediate
+ * transaction on Room's writer connection. The insert statement is prepared once per batch and
+ * reused for every row in it. Room serializes the batches with its other writes, and notifies
+ * its observers after every batch, so the rows imported so far can be queried and observed
+ * while the import is still running. Memory use doesn't depend on the size of the input.
+ */
+class StreamingSeeder(
+    private val database: RoomDatabase,
+    private val batchSize: Int = 10_000,
+) {
+    init {
+        require(batchSize > 0) { "batchSize must be positive" }
+    }
+
+    /**
+     * Inserts every row of [rows] with [insertSql], binding each row with [bind]. Calls
+     * [onProgress] after each committed batch. A batch that fails is rolled back, and the
+     * batches before it stay committed.
+     */
+    suspend fun <T> seed(
+        rows: Sequence<T>,
+        insertSql: String,
+        bind: (SQLiteStatement, T) -> Unit,
+        onProgress: suspend (SeedProgress) -> Unit = {},
+    ): SeedProgress = withContext(Dispatchers.IO) {
+        val iterator = rows.iterator()
+        val start = System.nanoTime()
+        var progress = SeedProgress(0, 0, 0)
+        while (iterator.hasNext()) {
+            val count = database.useWriterConnection { transactor ->
+                transactor.immediateTransaction {
+                    usePrepared(insertSql) { insert ->
+                        var count = 0
+                        while (count < batchSize && iterator.hasNext()) {
+                            bind(insert, iterator.next())
+                            insert.step()
+                            insert.reset()
+                            count++
+                        }
+                        count
+                    }
+                }
+            }
+            progress = SeedProgress(progress.rows + count, progress.batches + 1, System.nanoTime() - start)
+            onProgress(progress)
+        }
+        progress
+    }
+}
+
+/**
+ * Reads CSV records one at a time, following RFC 4180: fields can be quoted, and quoted fields
+ * can contain commas, line breaks and doubled quotes. The reader is not closed; use
+ * [useCsvRows] to close it even if the rows are not all read.
+ */
+fun csvRows(reader: Reader, skipHeader: Boolean = true): Sequence<List<String>> = sequence {
+    val input = reader.buffered()
+    val fields = ArrayList<String>()
+    val field = StringBuilder()
+    var quoted = false
+    var rowStarted = false
+    var header = skipHeader
+    while (true) {
+        val c = input.read()
+        if (quoted) {
+            when {
+                c == -1 -> throw IllegalArgumentException("Unterminated quoted field")
+                c == '"'.code -> {
+                    input.mark(1)
+                    if (input.read() == '"'.code) field.append('"') else {
+                        input.reset()
+                        quoted = false
+                    }
+                }
+                else -> field.append(c.toChar())
+            }
+            continue
+        }
+        when (c) {
+            '"'.code -> {
+                quoted = true
+                rowStarted = true
+            }
+            ','.code -> {
+                fields += field.toString()
+                field.setLength(0)
+                rowStarted = true
+            }
+            '\r'.code -> Unit
+            '\n'.code, -1 -> {
+                if (rowStarted || field.isNotEmpty()) {
+                    fields += field.toString()
+                    field.setLength(0)
+                    if (header) header = false else yield(fields.toList())
+                    fields.clear()
+                    rowStarted = false
+                }
+                if (c == -1) break
+            }
+            else -> {
+                field.append(c.toChar())
+                rowStarted = true
+            }
+        }
+    }
+}.constrainOnce()
+
+/**
+ * Calls [block] with the [csvRows] of this reader and closes the reader afterwards, like
+ * [Reader.useLines].
+ */
+inline fun <R> Reader.useCsvRows(skipHeader: Boolean = true, block: (Sequence<List<String>>) -> R): R =
+    use { block(csvRows(it, skipHeader)) }
+
+/**
+ * Reads newline-delimited JSON, one object per line, skipping blank lines. The reader is not
+ * closed; use [useNdjsonRows] to close it even if the rows are not all read.
+ */
+fun ndjsonRows(reader: Reader, json: Json = Json): Sequence<JsonObject> =
+    reader.buffered().lineSequence()
+        .filter { it.isNotBlank() }
+        .map { json.parseToJsonElement(it).jsonObject }
+
+/**
+ * Calls [block] with the [ndjsonRows] of this reader and closes the reader afterwards, like
+ * [Reader.useLines].
+ */
+inline fun <R> Reader.useNdjsonRows(json: Json = Json, block: (Sequence<JsonObject>) -> R): R =
+    use { block(ndjsonRows(it, json)) }
+
+@Entity
+data class SeedSong(
+    @PrimaryKey val id: Long,
+    val title: String,
+    val artist: String,
+    val durationMs: Long,
+)
+
+@Dao
+interface SeedSongDao {
+    @Insert
+    suspend fun insertAll(vararg songs: SeedSong)
+
+    @Query("SELECT COUNT(*) FROM SeedSong")
+    suspend fun count(): Int
+
+    @Query("SELECT * FROM SeedSong WHERE id = :id")
+    suspend fun song(id: Long): SeedSong?
+}
+
+@Database(entities = [SeedSong::class], version = 1)
+abstract class SeedDatabase : RoomDatabase() {
+    abstract fun seedSongDao(): SeedSongDao
+}
+
+const val INSERT_SEED_SONG = "INSERT INTO SeedSong (id, title, artist, durationMs) VALUES (?, ?, ?, ?)"
+
+fun bindSongCsv(statement: SQLiteStatement, row: List<String>) {
+    statement.bindLong(1, row[0].toLong())
+    statement.bindText(2, row[1])
+    statement.bindText(3, row[2])
+    statement.bindLong(4, row[3].toLong())
+}
+
+/** Imports the songs of an asset into [database]. */
+suspend fun seedSongsFromAsset(appContext: Context, database: SeedDatabase) {
+    appContext.assets.open("database/songs.csv").reader().useCsvRows { rows ->
+        StreamingSeeder(database).seed(rows, INSERT_SEED_SONG, ::bindSongCsv) { progress ->
+            Log.d("StreamingSeeder", "Imported ${progress.rows} songs, %.0f rows/s".format(progress.rowsPerSecond))
+        }
+    }
+}
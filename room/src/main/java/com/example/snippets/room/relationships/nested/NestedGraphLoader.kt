@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.relationships.nested
+
+import androidx.room3.Dao
+import androidx.room3.Embedded
+import androidx.room3.Query
+import androidx.room3.RoomDatabase
+import androidx.room3.withReadTransaction
+import androidx.sqlite.SQLiteConnection
+import androidx.sqlite.execSQL
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+
+data class PlaylistSong(
+    val playlistId: Long,
+    @Embedded val song: Song,
+)
+
+@Dao
+interface NestedGraphDao {
+    @Query("SELECT * FROM User WHERE userId > :afterUserId ORDER BY userId LIMIT :limit")
+    suspend fun usersAfter(afterUserId: Long, limit: Int): List<User>
+
+    @Query("SELECT * FROM Playlist WHERE userCreatorId IN (:userIds) ORDER BY playlistId")
+    suspend fun playlistsOf(userIds: List<Long>): List<Playlist>
+
+    @Query(
+        "SELECT PlaylistSongCrossRef.playlistId AS playlistId, Song.* FROM PlaylistSongCrossRef " +
+            "JOIN Song ON Song.songId = PlaylistSongCrossRef.songId " +
+            "WHERE PlaylistSongCrossRef.playlistId IN (:playlistIds)"
+    )
+    suspend fun songsOf(playlistIds: List<Long>): List<PlaylistSong>
+}
+
+/**
+ * Indexes `Playlist.userCreatorId`, which both [NestedGraphLoader] and the generated `@Relation`
+ * code look playlists up by. Without it, every batch of users scans the whole Playlist table.
+ * Add it with `addCallback` when building [AppDatabase].
+ */
+object NestedGraphIndexCallback : RoomDatabase.Callback() {
+    override fun onOpen(connection: SQLiteConnection) {
+        connection.execSQL("CREATE INDEX IF NOT EXISTS index_Playlist_userCreatorId ON Playlist (userCreatorId)")
+    }
+}
+
+/**
+ * Loads [UserWithPlaylistsAndSongs] a page of users at a time, as an alternative to
+ * [UserPlaylistSongDao.getUsersWithPlaylistsAndSongs], which loads the whole graph at once.
+ *
+ * Users are paged by key, [pageSize] at a time. The playlists and songs of a page are loaded
+ * with `IN (...)` queries of at most [maxInSize] keys each, so the number of queries per page
+ * is fixed and memory use is bounded by the size of one page, however many users there are.
+ * Each page is read in a single read transaction, so it is consistent. Build the database with
+ * [NestedGraphIndexCallback] so that the playlist lookups use an index.
+ */
+class NestedGraphLoader(
+    private val database: AppDatabase,
+    private val pageSize: Int = 100,
+    private val maxInSize: Int = 500,
+) {
+    private val dao = database.nestedGraphDao()
+
+    init {
+        require(pageSize > 0) { "pageSize must be positive" }
+        require(maxInSize in 1..999) { "maxInSize must be between 1 and SQLite's variable limit of 999" }
+    }
+
+    /**
+     * Loads the users after [afterUserId], or the first users if it is null.
+     */
+    suspend fun page(afterUserId: Long? = null): List<UserWithPlaylistsAndSongs> =
+        database.withReadTransaction {
+            val users = dao.usersAfter(afterUserId ?: Long.MIN_VALUE, pageSize)
+            if (users.isEmpty()) return@withReadTransaction emptyList()
+
+            val playlists = users.map { it.userId }.chunked(maxInSize).flatMap { dao.playlistsOf(it) }
+            val songsByPlaylist = HashMap<Long, MutableList<Song>>(playlists.size)
+            playlists.map { it.playlistId }.chunked(maxInSize).forEach { playlistIds ->
+                dao.songsOf(playlistIds).forEach { row ->
+                    songsByPlaylist.getOrPut(row.playlistId) { ArrayList() }.add(row.song)
+                }
+            }
+            val playlistsByUser = playlists.groupBy { it.userCreatorId }
+            users.map { user ->
+                UserWithPlaylistsAndSongs(
+                    user,
+                    playlistsByUser[user.userId].orEmpty().map { playlist ->
+                        PlaylistWithSongs(playlist, songsByPlaylist[playlist.playlistId].orEmpty())
+                    },
+                )
+            }
+        }
+
+    /**
+     * Emits all users one page at a time. The next page is only loaded once the collector is
+     * done with the previous one.
+     */
+    fun pages(): Flow<List<UserWithPlaylistsAndSongs>> = flow {
+        var afterUserId: Long? = null
+        while (true) {
+            val page = page(afterUserId)
+            if (page.isEmpty()) break
+            emit(page)
+            if (page.size < pageSize) break
+            afterUserId = page.last().user.userId
+        }
+    }
+}
@@ -93,4 +93,5 @@ interface UserPlaylistSongDao {
 @Database(entities = [User::class, Playlist::class, Song::class, PlaylistSongCrossRef::class], version = 1)
 abstract class AppDatabase : RoomDatabase() {
     abstract fun userPlaylistSongDao(): UserPlaylistSongDao
+    abstract fun nestedGraphDao(): NestedGraphDao
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.accessingdata
+
+import androidx.sqlite.SQLiteConnection
+import androidx.sqlite.driver.bundled.BundledSQLiteDriver
+import androidx.sqlite.execSQL
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Scans a 100k-row table repeatedly, preparing the statement and building a list of rows on
+ * every call like `runConnectionReader`, and with a [StatementCache] streaming rows into a
+ * reused holder. Reports the latency, allocated bytes and peak heap of each.
+ */
+class StatementCacheBenchmark {
+
+    private data class User(val id: Long, val name: String, val age: Long)
+
+    private class UserHolder {
+        var id = 0L
+        var age = 0L
+    }
+
+    private lateinit var connection: SQLiteConnection
+
+    @Before
+    fun setUp() {
+        connection = BundledSQLiteDriver().open(":memory:")
+        connection.execSQL("CREATE TABLE user (id INTEGER PRIMARY KEY, name TEXT NOT NULL, age INTEGER NOT NULL)")
+        connection.execSQL("BEGIN")
+        connection.prepare("INSERT INTO user VALUES (?, ?, ?)").use { statement ->
+            for (i in 0 until ROWS) {
+                statement.bindLong(1, i.toLong())
+                statement.bindText(2, "user name $i")
+                statement.bindLong(3, (i % 90).toLong())
+                statement.step()
+                statement.reset()
+            }
+        }
+        connection.execSQL("COMMIT")
+    }
+
+    @After
+    fun tearDown() {
+        connection.close()
+    }
+
+    private val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+    private val heapPools = ManagementFactory.getMemoryPoolMXBeans().filter { it.type == MemoryType.HEAP }
+
+    private class Result(val nanosPerScan: Double, val bytesPerScan: Double, val peakHeapBytes: Long)
+
+    private inline fun measure(scans: Int, block: () -> Long): Result {
+        repeat(scans) { block() }
+        System.gc()
+        heapPools.forEach { it.resetPeakUsage() }
+        val baseHeap = heapPools.sumOf { it.usage.used }
+        val threadId = Thread.currentThread().id
+        val startBytes = threadMXBean.getThreadAllocatedBytes(threadId)
+        val start = System.nanoTime()
+        repeat(scans) { assertEquals(EXPECTED_AGE_SUM, block()) }
+        val elapsed = System.nanoTime() - start
+        val allocated = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes
+        val peak = heapPools.sumOf { it.peakUsage.used } - baseHeap
+        return Result(elapsed.toDouble() / scans, allocated.toDouble() / scans, peak)
+    }
+
+    private fun listScan(minAge: Int): Long {
+        val users = connection.prepare("SELECT id, name, age FROM user WHERE age >= ?").use { statement ->
+            statement.bindLong(1, minAge.toLong())
+            buildList {
+                while (statement.step()) {
+                    add(User(statement.getLong(0), statement.getText(1), statement.getLong(2)))
+                }
+            }
+        }
+        return users.sumOf { it.age }
+    }
+
+    private fun streamingScan(cache: StatementCache, minAge: Int): Long =
+        cache.query(
+            "SELECT id, age FROM user WHERE age >= ?",
+            UserHolder(),
+            bind = { it.bindLong(1, minAge.toLong()) },
+            read = { statement, holder ->
+                holder.id = statement.getLong(0)
+                holder.age = statement.getLong(1)
+            },
+        ) { rows -> rows.sumOf { it.age } }
+
+    @Test
+    fun compareScans() {
+        val list = measure(SCANS) { listScan(minAge = 0) }
+        val cache = StatementCache(connection)
+        val streaming = measure(SCANS) { streamingScan(cache, minAge = 0) }
+        println(
+            "prepare + list: %.2f ms, %.0f bytes per scan, peak heap %d bytes; ".format(
+                list.nanosPerScan / 1e6, list.bytesPerScan, list.peakHeapBytes
+            ) + "cached + streaming: %.2f ms, %.0f bytes per scan, peak heap %d bytes".format(
+                streaming.nanosPerScan / 1e6, streaming.bytesPerScan, streaming.peakHeapBytes
+            )
+        )
+        assertEquals(1, cache.misses)
+        assertEquals(2 * SCANS - 1, cache.hits)
+        // The list scan allocates a row object and a String for each of the 100k rows.
+        assertTrue(streaming.bytesPerScan * 100 < list.bytesPerScan)
+        cache.close()
+    }
+
+    @Test
+    fun nestedUseOfTheSameSqlGetsItsOwnStatement() {
+        val cache = StatementCache(connection, capacity = 2)
+        val sql = "SELECT COUNT(*) FROM user WHERE age = ?"
+        val counts = cache.usePrepared(sql) { outer ->
+            outer.bindLong(1, 1)
+            outer.step()
+            val inner = cache.usePrepared(sql) { inner ->
+                inner.bindLong(1, 2)
+                inner.step()
+                inner.getLong(0)
+            }
+            outer.getLong(0) to inner
+        }
+        assertEquals(counts.first, counts.second)
+        // The cached statement was reset, so it can be bound again.
+        assertEquals(counts.first, cache.usePrepared(sql) { it.bindLong(1, 1); it.step(); it.getLong(0) })
+        cache.close()
+    }
+
+    @Test
+    fun leastRecentlyUsedStatementIsEvicted() {
+        val cache = StatementCache(connection, capacity = 2)
+        listOf("SELECT 1", "SELECT 2", "SELECT 1", "SELECT 3", "SELECT 1", "SELECT 2").forEach { sql ->
+            cache.usePrepared(sql) { it.step() }
+        }
+        assertEquals(4, cache.misses)
+        assertEquals(2, cache.hits)
+        cache.close()
+    }
+
+    @Test
+    fun rowFlowReleasesStatementWhenCancelled() = runBlocking {
+        val cache = StatementCache(connection)
+        val sql = "SELECT id FROM user"
+        cache.rowFlow(sql, newHolder = { LongArray(1) }, read = { statement, holder ->
+            holder[0] = statement.getLong(0)
+        }).take(3).collect()
+        cache.usePrepared(sql) { it.step() }
+        assertEquals(1, cache.misses)
+        assertEquals(1, cache.hits)
+        cache.close()
+    }
+
+    private companion object {
+        const val ROWS = 100_000
+        const val SCANS = 20
+        // Ages cycle through 0..89, and 100k is not a multiple of 90.
+        val EXPECTED_AGE_SUM = (0 until ROWS).sumOf { (it % 90).toLong() }
+    }
+}
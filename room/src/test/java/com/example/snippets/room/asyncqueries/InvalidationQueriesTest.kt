@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.asyncqueries
+
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class InvalidationQueriesTest {
+
+    private data class Artist(val id: Int, val name: String)
+
+    // Stands in for invalidationTracker.createFlow(), which emits once when collected.
+    private class FakeInvalidations {
+        val flow = MutableSharedFlow<Set<String>>(replay = 1).apply { tryEmit(setOf("Artist")) }
+
+        suspend fun invalidate() = flow.emit(setOf("Artist"))
+    }
+
+    @Test
+    fun burstOfWritesRecomputesOnce() = runTest {
+        val invalidations = FakeInvalidations()
+        var computations = 0
+        val results = ArrayList<Int>()
+        backgroundScope.launch {
+            invalidations.flow.recomputeOnInvalidation(debounceMillis = 100) { ++computations }
+                .collect { results += it }
+        }
+        delay(10)
+        assertEquals(listOf(1), results)
+
+        // 50 writes 5 ms apart, as in a sync loop.
+        repeat(50) {
+            invalidations.invalidate()
+            delay(5)
+        }
+        delay(200)
+        assertEquals(2, computations)
+        assertEquals(listOf(1, 2), results)
+    }
+
+    @Test
+    fun staleComputationIsCancelled() = runTest {
+        val invalidations = FakeInvalidations()
+        var started = 0
+        val results = ArrayList<Int>()
+        backgroundScope.launch {
+            invalidations.flow.recomputeOnInvalidation(debounceMillis = 10) {
+                val run = ++started
+                delay(500)
+                run
+            }.collect { results += it }
+        }
+        delay(100)
+        // Arrives while the first computation is still running.
+        invalidations.invalidate()
+        delay(1_000)
+        assertEquals(2, started)
+        assertEquals(listOf(2), results)
+    }
+
+    @Test
+    fun onlyChangedItemsAreFetched() = runTest {
+        val fetchedIds = ArrayList<List<Int>>()
+        val fetcher = DiffingFetcher<Artist, Int, String>(
+            keyOf = { it.id },
+            fetch = { artists ->
+                fetchedIds += artists.map { it.id }
+                artists.map { "tour of ${it.name}" }
+            },
+        )
+        val artists = List(100) { Artist(it, "artist $it") }
+        assertEquals("tour of artist 7", fetcher.update(artists).getValue(artists[7]))
+
+        val renamed = artists.toMutableList().apply {
+            this[3] = Artist(3, "renamed")
+            removeAt(50)
+            add(Artist(100, "new"))
+        }
+        val tours = fetcher.update(renamed)
+        assertEquals(listOf((0 until 100).toList(), listOf(3, 100)), fetchedIds)
+        assertEquals(100, tours.size)
+        assertEquals("tour of renamed", tours.getValue(renamed[3]))
+        assertEquals("tour of artist 7", tours.getValue(renamed[7]))
+        assertEquals(102, fetcher.fetchedItems)
+
+        fetcher.update(renamed)
+        assertEquals(2, fetchedIds.size)
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.asyncqueries
+
+import androidx.room3.Room
+import androidx.room3.RoomRawQuery
+import androidx.room3.immediateTransaction
+import androidx.room3.useWriterConnection
+import androidx.sqlite.driver.bundled.BundledSQLiteDriver
+import kotlin.math.abs
+import kotlin.random.Random
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class QueryMetricsTest {
+
+    @Test
+    fun percentilesAreWithinBucketPrecision() {
+        val histogram = LatencyHistogram()
+        val random = Random(42)
+        val values = List(100_000) { (random.nextDouble() * random.nextDouble() * 50_000_000).toLong() }
+        values.forEach { histogram.record(it) }
+        val sorted = values.sorted()
+        for (percentile in listOf(50.0, 90.0, 99.0, 99.9)) {
+            val exact = sorted[(sorted.size * percentile / 100).toInt() - 1]
+            val recorded = histogram.valueAtPercentile(percentile)
+            assertTrue("p$percentile: $recorded vs $exact", abs(recorded - exact) <= exact * 0.035 + 1)
+        }
+        assertEquals(sorted.last(), histogram.maxNanos)
+    }
+
+    @Test
+    fun bucketsCoverTheWholeRange() {
+        var previousIndex = -1
+        for (value in listOf(0L, 1L, 63L, 64L, 65L, 1_000L, 1_000_000L, Long.MAX_VALUE)) {
+            val index = LatencyHistogram.indexOf(value)
+            assertTrue(index > previousIndex)
+            assertTrue(value <= LatencyHistogram.upperBoundOf(index))
+            previousIndex = index
+        }
+    }
+
+    @Test
+    fun concurrentRecordingLosesNothing() {
+        val metrics = QueryMetrics()
+        val threads = List(8) {
+            Thread {
+                repeat(100_000) { i -> metrics.record("SELECT * FROM Song WHERE id = ?", i.toLong(), rows = 1) }
+            }
+        }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+        val stats = metrics["SELECT * FROM Song WHERE id = ?"]!!
+        assertEquals(800_000L, stats.latency.count)
+        assertEquals(800_000L, stats.rows)
+    }
+
+    @Test
+    fun templatesRedactLiteralsAndParameterLists() {
+        assertEquals(
+            "SELECT * FROM t1 WHERE name = ? AND age > ? AND id IN (?)",
+            QueryMetrics.templateOf("SELECT *  FROM t1\n WHERE name = 'O''Brien' AND age > 42 AND id IN (?, ?,?)"),
+        )
+    }
+
+    @Test
+    fun slowQueriesAreCapturedWithoutData() {
+        val metrics = QueryMetrics(slowQueryThresholdNanos = 1_000, slowQueryCapacity = 2)
+        metrics.record("SELECT * FROM Song WHERE id = 7", 10, rows = 1)
+        metrics.record("SELECT * FROM Song WHERE id = 8", 5_000, rows = 1)
+        metrics.record("SELECT * FROM Song WHERE title = 'secret'", 6_000, rows = 0)
+        metrics.record("SELECT * FROM Song WHERE id = 9", 7_000, rows = 1)
+
+        val slow = metrics.slowQueries()
+        assertEquals(listOf(6_000L, 7_000L), slow.map { it.nanos })
+        assertEquals("SELECT * FROM Song WHERE title = ?", slow[0].template)
+        assertFalse(metrics.dump().contains("secret"))
+    }
+
+    @Test
+    fun converterMeasuresDaoQueries() = runBlocking {
+        val metrics = QueryMetrics()
+        val db = Room.inMemoryDatabaseBuilder<MeasuredDatabase>()
+            .setDriver(BundledSQLiteDriver())
+            .addDaoReturnTypeConverter(QueryMetricsConverter(metrics))
+            .build()
+        db.useWriterConnection { transactor ->
+            transactor.immediateTransaction {
+                usePrepared("INSERT INTO Song (id) VALUES (?)") { statement ->
+                    for (id in 1..100) {
+                        statement.bindLong(1, id.toLong())
+                        statement.step()
+                        statement.reset()
+                    }
+                }
+            }
+        }
+        val dao = db.measuredSongDao()
+        repeat(10) { assertEquals(100, dao.getAllSongs().result.size) }
+        assertEquals(3, dao.getSongs(listOf(1, 2, 3)).result.size)
+        assertEquals(2, dao.getSongs(listOf(4, 5)).result.size)
+
+        assertEquals(10L, metrics["SELECT * FROM Song"]!!.latency.count)
+        assertEquals(1_000L, metrics["SELECT * FROM Song"]!!.rows)
+        // Both calls share one template, whatever the number of ids.
+        val byIds = metrics.stats().single { it.template.contains("IN") }
+        assertEquals(2L, byIds.latency.count)
+        assertEquals(5L, byIds.rows)
+
+        val dump = metrics.dump().lines()
+        assertEquals("count\trows\terrors\tp50\tp90\tp99\tmax\tquery", dump.first())
+        val allSongs = dump.single { it.endsWith("\tSELECT * FROM Song") }.split("\t")
+        assertEquals(listOf("10", "1000", "0"), allSongs.take(3))
+        db.close()
+    }
+
+    @Test
+    fun cancelledQueriesAreNotCountedAsFailures() = runBlocking {
+        val metrics = QueryMetrics()
+        val converter = QueryMetricsConverter(metrics)
+
+        val failure = runCatching {
+            converter.convert<Unit>(RoomRawQuery("SELECT * FROM Song")) { throw CancellationException("cancelled") }
+        }.exceptionOrNull()
+
+        assertTrue(failure is CancellationException)
+        assertNull(metrics["SELECT * FROM Song"])
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.prepopulate
+
+import androidx.room3.Room
+import androidx.sqlite.driver.bundled.BundledSQLiteDriver
+import java.io.File
+import java.io.StringReader
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.flow.drop
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import kotlinx.serialization.json.jsonPrimitive
+import kotlinx.serialization.json.long
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+/**
+ * Imports ROWS songs from a CSV file with [StreamingSeeder], and with the naive path of parsing
+ * every row into an entity and passing them all to an `@Insert` vararg method, and reports the
+ * rows per second of each.
+ *
+ * The default size keeps `./gradlew test` fast. Run with `-Dseed.rows=1000000` for the full
+ * 1M-row import.
+ */
+class StreamingSeederBenchmark {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun database() = Room.inMemoryDatabaseBuilder<SeedDatabase>()
+        .setDriver(BundledSQLiteDriver())
+        .build()
+
+    private fun writeCsv(rows: Int): File = folder.newFile("songs.csv").apply {
+        bufferedWriter().use { writer ->
+            writer.write("id,title,artist,durationMs\n")
+            for (i in 0 until rows) {
+                writer.write("$i,\"Song $i, part ${i % 7}\",Artist ${i % 1000},${180_000 + i % 60_000}\n")
+            }
+        }
+    }
+
+    @Test
+    fun compareWithInsertVararg() = runBlocking {
+        val csv = writeCsv(ROWS)
+
+        val db = database()
+        var firstBatchVisible = 0
+        val progress = csv.reader().useCsvRows { rows ->
+            StreamingSeeder(db).seed(rows, INSERT_SEED_SONG, ::bindSongCsv) {
+                // Committed batches can be queried while the import continues.
+                if (it.batches == 1) firstBatchVisible = db.seedSongDao().count()
+            }
+        }
+        assertEquals(10_000, firstBatchVisible)
+        assertEquals(ROWS.toLong(), progress.rows)
+        assertEquals(ROWS, db.seedSongDao().count())
+        assertEquals("Song 42, part 0", db.seedSongDao().song(42)?.title)
+        db.close()
+
+        val naive = database()
+        val start = System.nanoTime()
+        val songs = csv.reader().useCsvRows { rows ->
+            rows.map { row -> SeedSong(row[0].toLong(), row[1], row[2], row[3].toLong()) }.toList()
+        }
+        naive.seedSongDao().insertAll(*songs.toTypedArray())
+        val naiveNanos = System.nanoTime() - start
+        assertEquals(ROWS, naive.seedSongDao().count())
+        naive.close()
+
+        println(
+            "streaming: %.0f rows/s in ${progress.batches} batches; insert vararg: %.0f rows/s".format(
+                progress.rowsPerSecond,
+                ROWS * 1e9 / naiveNanos,
+            )
+        )
+    }
+
+    @Test
+    fun failedBatchIsRolledBack() = runBlocking {
+        val db = database()
+        val rows = sequenceOf(listOf("1", "a", "x", "1"), listOf("2", "b", "y", "2"), listOf("1", "dup", "z", "3"))
+        val failure = runCatching {
+            StreamingSeeder(db, batchSize = 2).seed(rows, INSERT_SEED_SONG, ::bindSongCsv)
+        }.exceptionOrNull()
+        assertNotNull(failure)
+        assertEquals(2, db.seedSongDao().count())
+
+        // The writer connection is usable again after the rollback.
+        StreamingSeeder(db).seed(sequenceOf(listOf("3", "c", "z", "3")), INSERT_SEED_SONG, ::bindSongCsv)
+        assertEquals(3, db.seedSongDao().count())
+        db.close()
+    }
+
+    @Test
+    fun observersAreNotifiedOfSeededRows() = runBlocking {
+        val db = database()
+        val subscribed = CompletableDeferred<Unit>()
+        val invalidated = async(Dispatchers.IO) {
+            db.invalidationTracker.createFlow("SeedSong")
+                .onEach { subscribed.complete(Unit) }
+                .drop(1)
+                .first()
+        }
+        subscribed.await()
+
+        StreamingSeeder(db).seed(sequenceOf(listOf("1", "a", "x", "1")), INSERT_SEED_SONG, ::bindSongCsv)
+        withTimeout(5_000) { invalidated.await() }
+        db.close()
+    }
+
+    @Test
+    fun csvHandlesQuotedFields() {
+        val rows = StringReader("a,b\r\n1,\"x, \"\"y\"\"\"\n2,\"multi\nline\"\n\n3,\n").useCsvRows { it.toList() }
+        assertEquals(listOf(listOf("1", "x, \"y\""), listOf("2", "multi\nline"), listOf("3", "")), rows)
+    }
+
+    @Test
+    fun readerIsClosedWhenRowsAreNotAllRead() {
+        var closed = false
+        val reader = object : StringReader("a\n1\n2\n3\n") {
+            override fun close() {
+                closed = true
+                super.close()
+            }
+        }
+        assertEquals(listOf("1"), reader.useCsvRows { rows -> rows.first() })
+        assertTrue(closed)
+    }
+
+    @Test
+    fun ndjsonSeedsRows() = runBlocking {
+        val db = database()
+        val input = """
+            {"id": 1, "title": "One", "artist": "A", "durationMs": 1000}
+
+            {"id": 2, "title": "Two", "artist": "B", "durationMs": 2000}
+        """.trimIndent()
+        StringReader(input).useNdjsonRows { rows ->
+            StreamingSeeder(db, batchSize = 1).seed(rows, INSERT_SEED_SONG, { statement, row ->
+                statement.bindLong(1, row.getValue("id").jsonPrimitive.long)
+                statement.bindText(2, row.getValue("title").jsonPrimitive.content)
+                statement.bindText(3, row.getValue("artist").jsonPrimitive.content)
+                statement.bindLong(4, row.getValue("durationMs").jsonPrimitive.long)
+            })
+        }
+        assertEquals(2, db.seedSongDao().count())
+        db.close()
+    }
+
+    private companion object {
+        val ROWS = System.getProperty("seed.rows")?.toInt() ?: 50_000
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.snippets.room.relationships.nested
+
+import androidx.room3.Room
+import androidx.room3.immediateTransaction
+import androidx.room3.useWriterConnection
+import androidx.sqlite.SQLiteConnection
+import androidx.sqlite.SQLiteDriver
+import androidx.sqlite.SQLiteStatement
+import androidx.sqlite.driver.bundled.BundledSQLiteDriver
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Loads USERS users with 20 playlists of 50 songs each, with the generated `@Relation` code and
+ * with [NestedGraphLoader], and reports the number of queries and the peak heap of each.
+ *
+ * The default size keeps the eager load within a unit test heap. Run with
+ * `-Dnested.users=10000` for the full 10k x 20 x 50 graph.
+ */
+class NestedGraphLoaderBenchmark {
+
+    private val queries = AtomicInteger()
+
+    // Counts the SELECT statements prepared on the app's tables.
+    private inner class CountingDriver(private val delegate: SQLiteDriver) : SQLiteDriver by delegate {
+        override fun open(fileName: String): SQLiteConnection = CountingConnection(delegate.open(fileName))
+    }
+
+    private inner class CountingConnection(private val delegate: SQLiteConnection) : SQLiteConnection by delegate {
+        override fun prepare(sql: String): SQLiteStatement {
+            if (sql.trimStart().startsWith("SELECT", ignoreCase = true) && "room_" !in sql) {
+                queries.incrementAndGet()
+            }
+            return delegate.prepare(sql)
+        }
+    }
+
+    private lateinit var db: AppDatabase
+
+    @Before
+    fun setUp() = runBlocking {
+        db = Room.inMemoryDatabaseBuilder<AppDatabase>()
+            .setDriver(CountingDriver(BundledSQLiteDriver()))
+            .addCallback(NestedGraphIndexCallback)
+            .build()
+        db.useWriterConnection { transactor ->
+            transactor.immediateTransaction {
+                listOf(
+                    "WITH RECURSIVE c(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM c WHERE n < $USERS) " +
+                        "INSERT INTO User SELECT n, 'user ' || n, n % 80 FROM c",
+                    "WITH RECURSIVE c(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM c WHERE n < $SONGS) " +
+                        "INSERT INTO Song SELECT n, 'song ' || n, 'artist ' || (n % 300) FROM c",
+                    "WITH RECURSIVE c(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM c WHERE n < ${USERS * PLAYLISTS}) " +
+                        "INSERT INTO Playlist SELECT n, (n - 1) / $PLAYLISTS + 1, 'playlist ' || n FROM c",
+                    "WITH RECURSIVE c(n) AS (SELECT 1 UNION ALL SELECT n + 1 FROM c " +
+                        "WHERE n < ${USERS * PLAYLISTS * SONGS_PER_PLAYLIST}) " +
+                        "INSERT INTO PlaylistSongCrossRef SELECT (n - 1) / $SONGS_PER_PLAYLIST + 1, " +
+                        "((n - 1) * 7) % $SONGS + 1 FROM c",
+                ).forEach { sql -> usePrepared(sql) { it.step() } }
+            }
+        }
+    }
+
+    @After
+    fun tearDown() {
+        db.close()
+    }
+
+    private val heapPools = ManagementFactory.getMemoryPoolMXBeans().filter { it.type == MemoryType.HEAP }
+
+    private class Result(val songs: Long, val queries: Int, val peakHeapBytes: Long)
+
+    private fun measure(block: suspend () -> Long): Result {
+        System.gc()
+        heapPools.forEach { it.resetPeakUsage() }
+        val baseHeap = heapPools.sumOf { it.usage.used }
+        queries.set(0)
+        val songs = runBlocking { block() }
+        return Result(songs, queries.get(), heapPools.sumOf { it.peakUsage.used } - baseHeap)
+    }
+
+    @Test
+    fun compareLoaders() {
+        val eager = measure {
+            db.userPlaylistSongDao().getUsersWithPlaylistsAndSongs()
+                .sumOf { user -> user.playlists.sumOf { it.songs.size.toLong() } }
+        }
+        val loader = NestedGraphLoader(db, pageSize = PAGE_SIZE)
+        var pages = 0
+        val paged = measure {
+            var songs = 0L
+            loader.pages().collect { page ->
+                pages++
+                songs += page.sumOf { user -> user.playlists.sumOf { it.songs.size.toLong() } }
+            }
+            songs
+        }
+        println(
+            "@Relation: ${eager.queries} queries, peak heap ${eager.peakHeapBytes / 1024} KB; " +
+                "paged loader: ${paged.queries} queries in $pages pages, peak heap ${paged.peakHeapBytes / 1024} KB"
+        )
+        val total = USERS.toLong() * PLAYLISTS * SONGS_PER_PLAYLIST
+        assertEquals(total, eager.songs)
+        assertEquals(total, paged.songs)
+        // Per page: the users, one playlist query and one song query per 500 playlists. When
+        // the last page is full, one more query finds that there are no more users.
+        val songQueriesPerPage = (PAGE_SIZE * PLAYLISTS + 499) / 500
+        val emptyPageQueries = if (USERS % PAGE_SIZE == 0) 1 else 0
+        assertEquals(pages * (2 + songQueriesPerPage) + emptyPageQueries, paged.queries)
+        assertTrue(paged.peakHeapBytes < eager.peakHeapBytes)
+    }
+
+    @Test
+    fun pageMatchesGeneratedRelation() = runBlocking {
+        val expected = db.userPlaylistSongDao().getUsersWithPlaylistsAndSongs().take(PAGE_SIZE)
+        val page = NestedGraphLoader(db, pageSize = PAGE_SIZE, maxInSize = 7).page()
+        assertEquals(expected.map { it.user }, page.map { it.user })
+        assertEquals(
+            expected.map { user -> user.playlists.map { it.playlist to it.songs.sortedBy { song -> song.songId } } },
+            page.map { user -> user.playlists.map { it.playlist to it.songs.sortedBy { song -> song.songId } } },
+        )
+    }
+
+    private companion object {
+        val USERS = System.getProperty("nested.users")?.toInt() ?: 500
+        const val PLAYLISTS = 20
+        const val SONGS_PER_PLAYLIST = 50
+        const val SONGS = 5_000
+        const val PAGE_SIZE = 100
+    }
+}
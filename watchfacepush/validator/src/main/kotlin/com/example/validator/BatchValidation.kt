@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.validator
+
+import com.google.android.wearable.watchface.validator.client.DwfValidatorFactory
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Outcome of validating a single watch face APK as part of a batch.
+ */
+data class BatchEntry(
+    val file: File,
+    val durationMillis: Long,
+    val token: String?,
+    val failures: List<String>,
+    val cached: Boolean = false,
+) {
+    val isValid: Boolean get() = failures.isEmpty() && token != null
+}
+
+/**
+ * Resolves the list of APKs to validate. [source] is either a directory, which is scanned
+ * recursively for `.apk` files, or a manifest file listing one APK path per line. Relative
+ * paths in a manifest are resolved against the manifest's own directory.
+ */
+fun resolveBatchInputs(source: File): List<File> {
+    if (source.isDirectory) {
+        return source.walkTopDown()
+            .filter { it.isFile && it.extension.equals("apk", ignoreCase = true) }
+            .sortedBy { it.path }
+            .toList()
+    }
+    val baseDir = source.absoluteFile.parentFile
+    return source.readLines()
+        .map { it.trim() }
+        .filter { it.isNotEmpty() && !it.startsWith("#") }
+        .map { path -> File(path).let { if (it.isAbsolute) it else File(baseDir, path) } }
+}
+
+/**
+ * Validates [apks] on a fixed pool of [parallelism] worker threads.
+ *
+ * Each APK is handed to the validator straight from where it lives on disk, so nothing is
+ * copied to a temp file. Every worker owns its own validator instance, and results are
+ * returned in the same order as [apks]. When a [cache] is supplied, APKs whose content has
+ * already been validated are answered from it instead of running the validator.
+ */
+fun validateBatch(
+    apks: List<File>,
+    packageName: String,
+    parallelism: Int = Runtime.getRuntime().availableProcessors(),
+    cache: ValidationCache? = null,
+): List<BatchEntry> {
+    require(parallelism > 0) { "parallelism must be positive" }
+    val executor = Executors.newFixedThreadPool(minOf(parallelism, apks.size.coerceAtLeast(1)))
+    val validators = ThreadLocal.withInitial { DwfValidatorFactory.create() }
+    try {
+        val futures = apks.map { apk ->
+            executor.submit(
+                Callable {
+                    val start = System.nanoTime()
+                    val entry = try {
+                        val key = cache?.keyFor(apk, packageName)
+                        val cached = key?.let { cache?.get(it) }
+                        if (cached != null) {
+                            BatchEntry(apk, 0, cached.token, cached.failures, cached = true)
+                        } else {
+                            val result = validators.get().validate(apk, packageName)
+                            val failures = result.failures().map { "${it.name()}: ${it.failureMessage()}" }
+                            val token = if (failures.isEmpty()) result.validationToken() else null
+                            if (key != null) {
+                                cache?.put(key, ValidationCache.CachedResult(token, failures))
+                            }
+                            BatchEntry(apk, 0, token, failures)
+                        }
+                    } catch (e: Exception) {
+                        BatchEntry(apk, 0, null, listOf("EXCEPTION: ${e.message ?: e.javaClass.name}"))
+                    }
+                    entry.copy(durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                }
+            )
+        }
+        return futures.map { it.get() }
+    } finally {
+        executor.shutdown()
+        cache?.trim()
+    }
+}
+
+/**
+ * Writes a machine-readable JSON report for a batch run to [output].
+ */
+fun writeBatchReport(
+    entries: List<BatchEntry>,
+    wallTimeMillis: Long,
+    output: File,
+    cache: ValidationCache? = null,
+) {
+    val json = buildString {
+        append("{\n")
+        append("  \"wallTimeMillis\": ").append(wallTimeMillis).append(",\n")
+        append("  \"total\": ").append(entries.size).append(",\n")
+        append("  \"failed\": ").append(entries.count { !it.isValid }).append(",\n")
+        if (cache != null) {
+            append("  \"cacheHits\": ").append(cache.hits).append(",\n")
+            append("  \"cacheMisses\": ").append(cache.misses).append(",\n")
+        }
+        append("  \"results\": [\n")
+        entries.forEachIndexed { index, entry ->
+            append("    {")
+            append("\"file\": ").append(entry.file.path.toJsonString()).append(", ")
+            append("\"durationMillis\": ").append(entry.durationMillis).append(", ")
+            append("\"cached\": ").append(entry.cached).append(", ")
+            append("\"token\": ").append(entry.token?.toJsonString() ?: "null").append(", ")
+            append("\"failures\": [")
+            append(entry.failures.joinToString(", ") { it.toJsonString() })
+            append("]}")
+            append(if (index < entries.lastIndex) ",\n" else "\n")
+        }
+        append("  ]\n")
+        append("}\n")
+    }
+    output.writeText(json)
+}
+
+private fun String.toJsonString(): String = buildString {
+    append('"')
+    for (c in this@toJsonString) {
+        when (c) {
+            '"' -> append("\\\"")
+            '\\' -> append("\\\\")
+            '\n' -> append("\\n")
+            '\r' -> append("\\r")
+            '\t' -> append("\\t")
+            else -> if (c < ' ') append("\\u%04x".format(c.code)) else append(c)
+        }
+    }
+    append('"')
+}
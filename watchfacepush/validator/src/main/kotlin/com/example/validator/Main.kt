@@ -26,7 +26,11 @@ class Main {
         @JvmStatic
         fun main(args: Array<String>) {
             println("Watch Face Push validator test program")
-            performValidation()
+            if (args.isEmpty()) {
+                performValidation()
+            } else {
+                performBatchValidation(args)
+            }
         }
     }
 }
@@ -55,6 +59,39 @@ private fun performValidation() {
     // [END android_examples_wfp_validation]
 }
 
+/**
+ * Batch mode: `<apk-dir|manifest> [report.json] [threads] [cache-dir]`.
+ */
+private fun performBatchValidation(args: Array<String>) {
+    val source = File(args[0])
+    val reportFile = File(args.getOrElse(1) { "validation-report.json" })
+    val threads = args.getOrNull(2)?.toIntOrNull() ?: Runtime.getRuntime().availableProcessors()
+    val cache = args.getOrNull(3)?.let { ValidationCache(File(it)) }
+    val appPackageName = "com.example.validator"
+
+    if (!source.exists()) {
+        println("Error: Cannot find '${source.path}'")
+        exitProcess(1)
+    }
+    val apks = resolveBatchInputs(source)
+    println("Validating ${apks.size} watch faces on $threads threads")
+
+    val start = System.nanoTime()
+    val entries = validateBatch(apks, appPackageName, threads, cache)
+    val wallTimeMillis = (System.nanoTime() - start) / 1_000_000
+
+    writeBatchReport(entries, wallTimeMillis, reportFile, cache)
+    val failed = entries.count { !it.isValid }
+    println("Validated ${entries.size} watch faces in $wallTimeMillis ms, $failed failed")
+    if (cache != null) {
+        println("Cache: ${cache.hits} hits, ${cache.misses} misses")
+    }
+    println("Report written to ${reportFile.path}")
+    if (failed > 0) {
+        exitProcess(1)
+    }
+}
+
 private fun obtainTempWatchFaceFile(): File {
     val resourceName = "watchface.apk"
 
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.validator
+
+import com.google.android.wearable.watchface.validator.client.DwfValidatorFactory
+import java.io.File
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * On-disk cache of validation results, keyed by the SHA-256 of the APK bytes, the package
+ * name and the validator version. Unchanged watch faces are answered from the cache without
+ * running the validator again.
+ *
+ * Each entry is a small file in [directory]. Once the entries take more than [maxBytes], the
+ * least recently used ones are evicted, using the file modification time as the access time.
+ */
+class ValidationCache(
+    private val directory: File,
+    private val maxBytes: Long = 64L * 1024 * 1024,
+    private val validatorVersion: String = defaultValidatorVersion(),
+) {
+    private val hitCount = AtomicInteger()
+    private val missCount = AtomicInteger()
+
+    val hits: Int get() = hitCount.get()
+    val misses: Int get() = missCount.get()
+
+    init {
+        require(maxBytes > 0) { "maxBytes must be positive" }
+        directory.mkdirs()
+    }
+
+    fun keyFor(apk: File, packageName: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(apk)
+        digest.update(0)
+        digest.update(packageName.toByteArray())
+        digest.update(0)
+        digest.update(validatorVersion.toByteArray())
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    /**
+     * Returns the cached token or failure list for [key], or null on a miss.
+     */
+    fun get(key: String): CachedResult? {
+        val entry = File(directory, key)
+        if (!entry.isFile) {
+            missCount.incrementAndGet()
+            return null
+        }
+        val lines = try {
+            entry.readLines()
+        } catch (e: Exception) {
+            missCount.incrementAndGet()
+            return null
+        }
+        entry.setLastModified(System.currentTimeMillis())
+        hitCount.incrementAndGet()
+        return when (lines.firstOrNull()) {
+            "TOKEN" -> CachedResult(token = lines.getOrNull(1), failures = emptyList())
+            else -> CachedResult(token = null, failures = lines.drop(1).map { unescape(it) })
+        }
+    }
+
+    fun put(key: String, result: CachedResult) {
+        val lines = if (result.token != null) {
+            listOf("TOKEN", result.token)
+        } else {
+            listOf("FAILURES") + result.failures.map { escape(it) }
+        }
+        // Write to a temp file first so that concurrent readers never see a partial entry.
+        val temp = File(directory, "$key.tmp-${Thread.currentThread().id}")
+        temp.writeText(lines.joinToString("\n"))
+        if (!temp.renameTo(File(directory, key))) {
+            temp.delete()
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until they take at most [maxBytes].
+     */
+    fun trim() {
+        val entries = directory.listFiles { file -> file.isFile && !file.name.contains(".tmp-") }
+            ?: return
+        var size = entries.sumOf { it.length() }
+        if (size <= maxBytes) return
+        for (entry in entries.sortedBy { it.lastModified() }) {
+            if (size <= maxBytes) break
+            val length = entry.length()
+            if (entry.delete()) size -= length
+        }
+    }
+
+    data class CachedResult(val token: String?, val failures: List<String>)
+
+    companion object {
+        /**
+         * Identifies the validator by the SHA-256 of the jar it was loaded from, so that results
+         * are never shared between validator builds, even when the jar has no version in its
+         * manifest. Falls back to the manifest version when the classes are not loaded from a
+         * jar file.
+         */
+        fun defaultValidatorVersion(): String {
+            val jar = DwfValidatorFactory::class.java.protectionDomain?.codeSource?.location
+                ?.let { runCatching { File(it.toURI()) }.getOrNull() }
+                ?.takeIf { it.isFile }
+            if (jar != null) {
+                val digest = MessageDigest.getInstance("SHA-256")
+                digest.update(jar)
+                return "sha256:" + digest.digest().joinToString("") { "%02x".format(it) }
+            }
+            return DwfValidatorFactory::class.java.`package`?.implementationVersion
+                ?: throw IllegalStateException(
+                    "Can't determine the validator version, pass validatorVersion explicitly"
+                )
+        }
+
+        private fun MessageDigest.update(file: File) {
+            file.inputStream().buffered().use { input ->
+                val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
+                while (true) {
+                    val read = input.read(buffer)
+                    if (read < 0) break
+                    update(buffer, 0, read)
+                }
+            }
+        }
+
+        // Failure messages are stored one per line, with backslashes and line breaks escaped.
+        private fun escape(message: String): String = buildString(message.length) {
+            for (c in message) {
+                when (c) {
+                    '\\' -> append("\\\\")
+                    '\n' -> append("\\n")
+                    '\r' -> append("\\r")
+                    else -> append(c)
+                }
+            }
+        }
+
+        private fun unescape(line: String): String = buildString(line.length) {
+            var i = 0
+            while (i < line.length) {
+                val c = line[i++]
+                if (c != '\\' || i == line.length) {
+                    append(c)
+                    continue
+                }
+                when (val next = line[i++]) {
+                    'n' -> append('\n')
+                    'r' -> append('\r')
+                    else -> append(next)
+                }
+            }
+        }
+    }
+}